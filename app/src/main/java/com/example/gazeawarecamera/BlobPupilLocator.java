@@ -0,0 +1,104 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfKeyPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.features2d.SimpleBlobDetector;
+import org.opencv.features2d.SimpleBlobDetector_Params;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * The BlobPupilLocator thresholds the eye into a binary image, cleans it up with erosion, dilation
+ * and a median blur, and looks for a roughly circular blob with SimpleBlobDetector. This was our
+ * method for finding pupils until 12/10/2021.
+ *
+ * https://medium.com/@stepanfilonov/tracking-your-eyes-with-python-3952e66194a6 - methodology
+ * https://www.tutorialspoint.com/java_dip/eroding_dilating.htm - values for erosion and dilation
+ *
+ * A joint effort contributed by Mathew, John, and Brayden using the help of the sources above.
+ *
+ * The detector may find more than one blob in an eye. We take the largest, since the pupil is the
+ * largest dark circle in the eye. The blobs are read straight into arrays of coordinates and sizes
+ * that are reused for every eye, rather than as a new KeyPoint object for each blob, and the
+ * binary eye is written into a Mat from the MatPool.
+ */
+public class BlobPupilLocator implements PupilLocator {
+
+    private static final int EROSION_SIZE = 2;
+    private static final int DILATION_SIZE = 2;
+
+    private final Point defAnchor = new Point(-1, -1);
+    private Mat erodeElement;
+    private Mat dilationElement;
+    private SimpleBlobDetector detector;
+    private MatOfKeyPoint keyPoints;
+    private float[] blobPoints = new float[8];
+    private float[] blobSizes = new float[4];
+
+    @Override
+    public String getName() {
+        return "blob";
+    }
+
+    @Override
+    public boolean locatePupil(Mat greyEye, double[] result) {
+        if (detector == null) {
+            /*
+             * The structuring elements and the detector are the same for every eye, so we build
+             * them once.
+             */
+            erodeElement = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2 * EROSION_SIZE + 1, 2 * EROSION_SIZE + 1));
+            dilationElement = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2 * DILATION_SIZE + 1, 2 * DILATION_SIZE + 1));
+            SimpleBlobDetector_Params parameters = new SimpleBlobDetector_Params();
+            parameters.set_filterByCircularity(true);
+            parameters.set_minCircularity((float) 0.3);
+            parameters.set_maxCircularity((float) 1.0);
+            detector = SimpleBlobDetector.create(parameters);
+            keyPoints = new MatOfKeyPoint();
+        }
+
+        Mat binaryEye = MatPool.get().acquire(greyEye.rows(), greyEye.cols(), CvType.CV_8UC1);
+        Imgproc.adaptiveThreshold(greyEye, binaryEye, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY, 81, 55);
+        Imgproc.erode(binaryEye, binaryEye, erodeElement, defAnchor, 2);
+        Imgproc.dilate(binaryEye, binaryEye, dilationElement, defAnchor, 4);
+        Imgproc.medianBlur(binaryEye, binaryEye, 5);
+
+        detector.detect(binaryEye, keyPoints);
+        MatPool.get().release(binaryEye);
+        int numberOfBlobs = keyPoints.toArrays(blobPoints, blobSizes, null);
+        if (numberOfBlobs > blobSizes.length) {
+            blobPoints = new float[2 * numberOfBlobs];
+            blobSizes = new float[numberOfBlobs];
+            keyPoints.toArrays(blobPoints, blobSizes, null);
+        }
+        if (numberOfBlobs == 0) {
+            return false;
+        }
+        if (numberOfBlobs > 1) {
+            System.out.println("Warning: SimpleBlobDetector located more than one blob for this eye. Using the largest.");
+        }
+        int largest = 0;
+        for (int i = 1; i < numberOfBlobs; i++) {
+            if (blobSizes[i] > blobSizes[largest]) {
+                largest = i;
+            }
+        }
+        result[0] = blobPoints[2 * largest];
+        result[1] = blobPoints[2 * largest + 1];
+        return true;
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import static com.example.gazeawarecamera.MainActivity.eyeCascade;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * The CascadeEyeDetector searches the top half of a face for eyes with the Haar CascadeClassifier
+ * loaded by MainActivity. We only search the top half to eliminate false detections such as
+ * nostrils.
+ *
+ * Faces near the camera produce crops that are several hundred pixels wide, and running the
+ * CascadeClassifier over every one of those pixels is the most expensive thing we do per face.
+ * When the detector is created with downscaling turned on, the top half of each face is first
+ * shrunk to CANONICAL_FACE_WIDTH pixels wide with INTER_AREA interpolation, which averages the
+ * pixels that are merged together and therefore keeps the eyes visible at the lower resolution.
+ * The boxes found there are mapped back to full resolution. The downscaled face is written into
+ * a Mat from the MatPool so that we do not allocate a new buffer for each face.
+ */
+public class CascadeEyeDetector implements EyeDetector {
+
+    private static final int CANONICAL_FACE_WIDTH = 160;
+
+    private final boolean downscale;
+
+    public CascadeEyeDetector(boolean downscale) {
+        this.downscale = downscale;
+    }
+
+    @Override
+    public String getName() {
+        return downscale ? "cascade-downscaled" : "cascade";
+    }
+
+    @Override
+    public Rect[] detectEyes(Mat greyFace, DetectedFace face) {
+        if (eyeCascade == null) {
+            return new Rect[0];
+        }
+        Mat croppedFace = new Mat(greyFace, new Rect(0, 0, greyFace.cols(), greyFace.rows() / 2));
+        /*
+         * detectMultiScale initializes a MatOfRect of object. This is a matrix where each element
+         * is a rectangle - the eye bounding boxes. The third and fourth arguments for
+         * detectMultiScale are scaleFactor and minNeighbors, where higher scaleFactor typically
+         * results in more detection, and higher minNeighbours results in lower detection. We found
+         * a balance successfully detects eyes most of the time. Finally, MatOfRect has a
+         * convenient method which allows us to convert it to an array. This will make it much
+         * easier to work with
+         */
+        MatOfRect eyes = new MatOfRect();
+        if (!downscale || croppedFace.cols() <= CANONICAL_FACE_WIDTH) {
+            eyeCascade.detectMultiScale(croppedFace, eyes, 1.3, 25);
+            Rect[] eyeBoundingBoxes = eyes.toArray();
+            /*
+             * The cropped face and the MatOfRect are created for every face, so we close them as
+             * soon as the boxes have been copied out rather than leaving them to the finalizer.
+             */
+            eyes.close();
+            croppedFace.close();
+            return eyeBoundingBoxes;
+        }
+
+        double scale = (double) CANONICAL_FACE_WIDTH / croppedFace.cols();
+        int downscaledHeight = Math.max(1, (int) Math.round(croppedFace.rows() * scale));
+        Mat downscaledFace = MatPool.get().acquire(downscaledHeight, CANONICAL_FACE_WIDTH, CvType.CV_8UC1);
+        Imgproc.resize(croppedFace, downscaledFace, new Size(CANONICAL_FACE_WIDTH, downscaledHeight), 0, 0, Imgproc.INTER_AREA);
+        eyeCascade.detectMultiScale(downscaledFace, eyes, 1.3, 25);
+        MatPool.get().release(downscaledFace);
+        Rect[] eyeBoundingBoxes = eyes.toArray();
+        eyes.close();
+        int croppedWidth = croppedFace.cols();
+        int croppedHeight = croppedFace.rows();
+        croppedFace.close();
+
+        for (int i = 0; i < eyeBoundingBoxes.length; i++) {
+            /*
+             * Rounding the corners outward means the mapped box always covers the eye, and
+             * clamping keeps it inside the face so that we can safely take a submatrix with it.
+             */
+            int left = Math.max(0, (int) Math.floor(eyeBoundingBoxes[i].x / scale));
+            int top = Math.max(0, (int) Math.floor(eyeBoundingBoxes[i].y / scale));
+            int right = Math.min(croppedWidth, (int) Math.ceil((eyeBoundingBoxes[i].x + eyeBoundingBoxes[i].width) / scale));
+            int bottom = Math.min(croppedHeight, (int) Math.ceil((eyeBoundingBoxes[i].y + eyeBoundingBoxes[i].height) / scale));
+            eyeBoundingBoxes[i] = new Rect(left, top, right - left, bottom - top);
+        }
+        return eyeBoundingBoxes;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * The DarkestPupilLocator takes the darkest pixel of the eye to be the center of the pupil, found
+ * with Core.minMaxLoc. This was our original method, using some code from
+ * http://romanhosek.cz/android-eye-detection-and-tracking-with-opencv/
+ *
+ * Large eyes are first shrunk to COARSE_WIDTH pixels wide, and the darkest pixel found there is
+ * refined by searching only a small window of the full resolution eye around it. The shrunk eye
+ * is written into a Mat from the MatPool.
+ */
+public class DarkestPupilLocator implements PupilLocator {
+
+    private static final int COARSE_WIDTH = 24;
+
+    private final Size coarseSize = new Size();
+
+    @Override
+    public String getName() {
+        return "darkest";
+    }
+
+    @Override
+    public boolean locatePupil(Mat greyEye, double[] result) {
+        if (greyEye.empty()) {
+            return false;
+        }
+        Mat searchWindow = greyEye;
+        int windowX = 0;
+        int windowY = 0;
+        if (greyEye.cols() > COARSE_WIDTH) {
+            double scale = (double) COARSE_WIDTH / greyEye.cols();
+            coarseSize.width = COARSE_WIDTH;
+            coarseSize.height = Math.max(1, Math.round(greyEye.rows() * scale));
+            Mat coarseEye = MatPool.get().acquire((int) coarseSize.height, COARSE_WIDTH, CvType.CV_8UC1);
+            Imgproc.resize(greyEye, coarseEye, coarseSize, 0, 0, Imgproc.INTER_AREA);
+            Core.MinMaxLocResult coarsePupil = Core.minMaxLoc(coarseEye);
+            MatPool.get().release(coarseEye);
+            /*
+             * One coarse pixel covers roughly 1 / scale full resolution pixels, so the window
+             * extends that far (plus one pixel) in each direction from the coarse pupil.
+             */
+            int centerX = (int) Math.round((coarsePupil.minLoc.x + 0.5) / scale);
+            int centerY = (int) Math.round((coarsePupil.minLoc.y + 0.5) / scale);
+            int radius = (int) Math.ceil(1.0 / scale) + 1;
+            windowX = Math.max(0, centerX - radius);
+            windowY = Math.max(0, centerY - radius);
+            int right = Math.min(greyEye.cols(), centerX + radius + 1);
+            int bottom = Math.min(greyEye.rows(), centerY + radius + 1);
+            if (right > windowX && bottom > windowY) {
+                searchWindow = new Mat(greyEye, new Rect(windowX, windowY, right - windowX, bottom - windowY));
+            } else {
+                windowX = 0;
+                windowY = 0;
+            }
+        }
+        /*
+         * minMaxLoc finds the darkest region of an image.
+         */
+        Core.MinMaxLocResult pupil = Core.minMaxLoc(searchWindow);
+        if (searchWindow != greyEye) {
+            searchWindow.close();
+        }
+        result[0] = pupil.minLoc.x + windowX;
+        result[1] = pupil.minLoc.y + windowY;
+        return true;
+    }
+
+}
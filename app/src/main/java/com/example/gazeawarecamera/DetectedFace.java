@@ -0,0 +1,115 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+
+/*
+ * A DetectedFace is a face found by one of our FaceBackends. ML Kit and the OpenCV face detector
+ * report faces in different forms, so each backend converts what it finds into a DetectedFace and
+ * the rest of the app only ever works with these. Every coordinate is in the upright frame, the
+ * same coordinates ML Kit uses.
+ *
+ * Any landmark the backend could not find is null. Not every backend can tell whether the eyes are
+ * open. When hasEyeClassification is false, the eye open probabilities are unknown rather than
+ * low, and should not be checked. Likewise, a head rotation the backend could not measure is NaN.
+ * The rotations are in degrees, using ML Kit's convention: X is the head tilting up or down, Y is
+ * the head turning left or right, and Z is the head rolling toward a shoulder.
+ */
+public class DetectedFace {
+
+    private final Rect boundingBox;
+    private final PointF leftEye;
+    private final PointF rightEye;
+    private final PointF leftEar;
+    private final PointF rightEar;
+    private final PointF nose;
+    private final boolean hasEyeClassification;
+    private final Float leftEyeOpenProbability;
+    private final Float rightEyeOpenProbability;
+    private final float headEulerAngleX;
+    private final float headEulerAngleY;
+    private final float headEulerAngleZ;
+
+    public DetectedFace(Rect boundingBox, PointF leftEye, PointF rightEye, PointF leftEar, PointF rightEar, PointF nose,
+                        boolean hasEyeClassification, Float leftEyeOpenProbability, Float rightEyeOpenProbability,
+                        float headEulerAngleX, float headEulerAngleY, float headEulerAngleZ) {
+        this.boundingBox = boundingBox;
+        this.leftEye = leftEye;
+        this.rightEye = rightEye;
+        this.leftEar = leftEar;
+        this.rightEar = rightEar;
+        this.nose = nose;
+        this.hasEyeClassification = hasEyeClassification;
+        this.leftEyeOpenProbability = leftEyeOpenProbability;
+        this.rightEyeOpenProbability = rightEyeOpenProbability;
+        this.headEulerAngleX = headEulerAngleX;
+        this.headEulerAngleY = headEulerAngleY;
+        this.headEulerAngleZ = headEulerAngleZ;
+    }
+
+    public Rect getBoundingBox() {
+        return boundingBox;
+    }
+
+    /*
+     * The center of the subject's left eye, which is on the right of an unmirrored image.
+     */
+    public PointF getLeftEye() {
+        return leftEye;
+    }
+
+    public PointF getRightEye() {
+        return rightEye;
+    }
+
+    public PointF getLeftEar() {
+        return leftEar;
+    }
+
+    public PointF getRightEar() {
+        return rightEar;
+    }
+
+    /*
+     * The base of the nose.
+     */
+    public PointF getNose() {
+        return nose;
+    }
+
+    public boolean hasEyeClassification() {
+        return hasEyeClassification;
+    }
+
+    public Float getLeftEyeOpenProbability() {
+        return leftEyeOpenProbability;
+    }
+
+    public Float getRightEyeOpenProbability() {
+        return rightEyeOpenProbability;
+    }
+
+    public float getHeadEulerAngleX() {
+        return headEulerAngleX;
+    }
+
+    public float getHeadEulerAngleY() {
+        return headEulerAngleY;
+    }
+
+    public float getHeadEulerAngleZ() {
+        return headEulerAngleZ;
+    }
+
+}
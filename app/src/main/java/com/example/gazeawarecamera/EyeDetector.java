@@ -0,0 +1,36 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/*
+ * An EyeDetector finds the regions of a face that contain its eyes. There is more than one way to
+ * do this, trading speed for accuracy, so GazeDetector keeps every implementation in a
+ * StrategyRegistry and lets it pick the fastest one that is accurate enough.
+ */
+public interface EyeDetector {
+
+    /*
+     * A short name used when reporting how each strategy performs.
+     */
+    String getName();
+
+    /*
+     * Returns the bounding boxes of the eyes in greyFace, in the coordinates of greyFace. The
+     * DetectedFace is the one whose bounding box greyFace was cut from, in case its landmarks are
+     * of use.
+     */
+    Rect[] detectEyes(Mat greyFace, DetectedFace face);
+
+}
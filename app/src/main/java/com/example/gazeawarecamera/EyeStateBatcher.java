@@ -0,0 +1,194 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.dnn.Net;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The EyeStateBatcher estimates how likely each eye in a frame is to be open with a small network
+ * run through org.opencv.dnn. Some face backends, such as YuNet, cannot tell whether the eyes are
+ * open, so this takes the place of ML Kit's classification for them.
+ *
+ * Every call to forward has a fixed cost on top of the work the network does, and for a network
+ * this small that cost is most of the time. So rather than run the network once per eye, every
+ * eye crop in the frame is added first, and run packs them all into a single NCHW blob with
+ * Dnn.blobFromImages and makes one forward pass. The results are read back in the order the crops
+ * were added, so the caller can scatter them back to its faces. The resized crops, the list
+ * holding them and the array the results are copied into are kept between frames. The blob and
+ * the output are new Mats every time, since the Java bindings cannot fill in existing ones, so
+ * they are closed as soon as the results have been read.
+ *
+ * When useBatching is false, the network is run once per crop instead. The time per crop is
+ * recorded separately for each mode and each number of crops in a frame, so getSummary shows how
+ * the speedup from batching grows with the number of subjects.
+ *
+ * The network is expected to take a grey INPUT_SIZE by INPUT_SIZE eye scaled to between 0 and 1,
+ * and to give one or more values per eye, the last of which is the probability that it is open.
+ */
+public class EyeStateBatcher {
+
+    public static boolean useBatching = true;
+
+    private static final int INPUT_SIZE = 24;
+    private static final int MAXIMUM_TRACKED_BATCH = 16;
+
+    private final Net net;
+    private final Size inputSize = new Size(INPUT_SIZE, INPUT_SIZE);
+    private final Scalar mean = new Scalar(0);
+    private final List<Mat> cropPool = new ArrayList<Mat>();
+    private final List<Mat> batch = new ArrayList<Mat>();
+    private final List<Mat> singleCrop = new ArrayList<Mat>(1);
+    private float[] outputValues = new float[0];
+    private float[] openProbabilities = new float[0];
+    private int numberOfCrops = 0;
+
+    /*
+     * Total time spent and total crops run for each number of crops in a frame, indexed by
+     * [batched][crops].
+     */
+    private final long[][] totalTimes = new long[2][MAXIMUM_TRACKED_BATCH + 1];
+    private final long[][] totalCrops = new long[2][MAXIMUM_TRACKED_BATCH + 1];
+
+    public EyeStateBatcher(String modelPath) {
+        net = Dnn.readNet(modelPath);
+        net.setPreferableBackend(Dnn.DNN_BACKEND_OPENCV);
+        net.setPreferableTarget(Dnn.DNN_TARGET_CPU);
+    }
+
+    /*
+     * Forgets the crops of the previous frame.
+     */
+    public void clear() {
+        numberOfCrops = 0;
+    }
+
+    /*
+     * Adds a grey eye crop to the batch and returns its index, which is where its result will be
+     * found after run.
+     */
+    public int add(Mat greyEye) {
+        if (cropPool.size() == numberOfCrops) {
+            cropPool.add(new Mat());
+        }
+        Imgproc.resize(greyEye, cropPool.get(numberOfCrops), inputSize, 0, 0, Imgproc.INTER_AREA);
+        numberOfCrops += 1;
+        return numberOfCrops - 1;
+    }
+
+    /*
+     * Runs the network over every crop added since the last clear.
+     */
+    public void run() {
+        if (numberOfCrops == 0) {
+            return;
+        }
+        if (openProbabilities.length < numberOfCrops) {
+            openProbabilities = new float[Math.max(numberOfCrops, 2 * openProbabilities.length)];
+        }
+        long startTime = System.nanoTime();
+        if (useBatching) {
+            batch.clear();
+            for (int i = 0; i < numberOfCrops; i++) {
+                batch.add(cropPool.get(i));
+            }
+            forward(batch, 0);
+        } else {
+            for (int i = 0; i < numberOfCrops; i++) {
+                singleCrop.clear();
+                singleCrop.add(cropPool.get(i));
+                forward(singleCrop, i);
+            }
+        }
+        int mode = useBatching ? 1 : 0;
+        int tracked = Math.min(numberOfCrops, MAXIMUM_TRACKED_BATCH);
+        totalTimes[mode][tracked] += System.nanoTime() - startTime;
+        totalCrops[mode][tracked] += numberOfCrops;
+    }
+
+    /*
+     * Runs the network once over the given crops and stores the probability for each of them,
+     * starting at firstIndex.
+     */
+    private void forward(List<Mat> crops, int firstIndex) {
+        /*
+         * The Java bindings give us no way to reuse the blob or the output between frames:
+         * blobFromImages always returns a new Mat, and the forward variations that fill in a list
+         * of outputs build new Mats for it as well. So instead we close every Mat we are handed,
+         * along with the reshaped header we read the output through, as soon as we are done with
+         * it. That frees the native objects right away rather than leaving them to the finalizer.
+         */
+        Mat blob = Dnn.blobFromImages(crops, 1.0 / 255, inputSize, mean, false, false);
+        Mat output = null;
+        Mat flatOutput = null;
+        try {
+            net.setInput(blob);
+            output = net.forward();
+
+            int total = (int) output.total();
+            if (outputValues.length < total) {
+                outputValues = new float[total];
+            }
+            flatOutput = output.reshape(1, 1);
+            flatOutput.get(0, 0, outputValues);
+            int valuesPerCrop = total / crops.size();
+            for (int i = 0; i < crops.size(); i++) {
+                openProbabilities[firstIndex + i] = outputValues[(i + 1) * valuesPerCrop - 1];
+            }
+        } finally {
+            blob.close();
+            if (output != null) {
+                output.close();
+            }
+            if (flatOutput != null) {
+                flatOutput.close();
+            }
+        }
+    }
+
+    /*
+     * The probability that the crop with the given index is an open eye.
+     */
+    public float getOpenProbability(int index) {
+        return openProbabilities[index];
+    }
+
+    /*
+     * Returns the average time per crop, in microseconds, for each number of crops in a frame
+     * that has been seen, with and without batching, for analyzing test results.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int crops = 1; crops <= MAXIMUM_TRACKED_BATCH; crops++) {
+            if (totalCrops[0][crops] == 0 && totalCrops[1][crops] == 0) {
+                continue;
+            }
+            summary.append(crops).append(crops == MAXIMUM_TRACKED_BATCH ? "+" : "").append(" crops: ");
+            if (totalCrops[1][crops] > 0) {
+                summary.append("batched ").append(totalTimes[1][crops] / 1000 / totalCrops[1][crops]).append(" us ");
+            }
+            if (totalCrops[0][crops] > 0) {
+                summary.append("unbatched ").append(totalTimes[0][crops] / 1000 / totalCrops[0][crops]).append(" us ");
+            }
+            summary.append("per crop. ");
+        }
+        return summary.toString();
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import org.opencv.core.Mat;
+
+import java.util.List;
+
+/*
+ * A FaceBackend finds the faces in a frame, along with the landmarks GazeDetector needs. We have
+ * one backend built on ML Kit and one built on OpenCV's FaceDetectorYN, so that the two can be
+ * compared for speed and the app does not have to depend on ML Kit.
+ *
+ * Each frame is handed over in two forms, since ML Kit wants an InputImage while OpenCV wants a
+ * Mat. The InputImage carries the rotation itself. The grey Mat is the unrotated luminance of the
+ * same image, and rotationDegrees is how far it must be turned clockwise to be upright. A backend
+ * may answer before process returns or later on another thread, but it always calls onComplete
+ * exactly once after onSuccess or onFailure.
+ *
+ * The faces are reported in upright coordinates, which do not match the unrotated grey Mat. So
+ * onSuccess also hands back faceImage, the grey image in the same coordinates as the faces, and
+ * that is the image GazeDetector must search for pupils. It belongs to the backend and is only
+ * valid until onComplete has been called.
+ */
+public interface FaceBackend {
+
+    interface Callback {
+        void onSuccess(List<DetectedFace> faces, Mat faceImage);
+        void onFailure(Exception e);
+        void onComplete();
+    }
+
+    /*
+     * A short name used when reporting how each backend performs.
+     */
+    String getName();
+
+    void process(InputImage image, Mat greyImage, int rotationDegrees, Callback callback);
+
+}
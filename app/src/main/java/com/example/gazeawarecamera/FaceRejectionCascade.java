@@ -0,0 +1,139 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import android.graphics.PointF;
+
+/*
+ * The FaceRejectionCascade rules out faces that cannot be looking toward the camera before any
+ * OpenCV work is done on them. Searching a face for eyes and pupils is by far the most expensive
+ * thing we do per face, yet many faces can be rejected from what the face backend already told us.
+ * The checks are run in order of cost, and the first one that fails rejects the face:
+ *
+ * 1. Head pose: a head turned or rolled too far cannot be gazing at the camera, and our distance
+ *    comparisons are meaningless for it anyway.
+ * 2. Face size: below MINIMUM_FACE_WIDTH pixels the pupils are only a pixel or two across and
+ *    cannot be told apart from their surroundings.
+ * 3. Eye openness: closed eyes are not looking at anything.
+ * 4. Landmarks: without the eyes, ears and nose there is nothing to measure against.
+ * 5. Landmark gaze estimate: if the nose is far off the middle of the eyes, the face is turned
+ *    away, even when the backend could not measure the rotation of the head.
+ * 6. Eye search: the pupils of both eyes could not be found. This is the expensive stage, and
+ *    GazeDetector reports it after the fact.
+ *
+ * The number of faces rejected at each stage is kept for analyzing test results. The checks
+ * themselves are static methods on primitives so they can be tested on their own.
+ */
+public class FaceRejectionCascade {
+
+    public static final int PASSED = -1;
+    public static final int HEAD_POSE = 0;
+    public static final int FACE_SIZE = 1;
+    public static final int EYES_CLOSED = 2;
+    public static final int MISSING_LANDMARKS = 3;
+    public static final int LANDMARK_GAZE = 4;
+    public static final int EYE_SEARCH = 5;
+    private static final String[] STAGE_NAMES = {"head pose", "face size", "eyes closed", "missing landmarks", "landmark gaze", "eye search"};
+
+    private static final double MAXIMUM_HEAD_YAW = 30.0;
+    private static final double MAXIMUM_HEAD_PITCH = 25.0;
+    private static final double MAXIMUM_HEAD_ROLL = 30.0;
+    private static final double MINIMUM_FACE_WIDTH = 60.0;
+    private static final double MINIMUM_EYE_OPEN_PROBABILITY = 0.9;
+    private static final double MAXIMUM_NOSE_OFFSET = 0.35;
+
+    private final int[] rejections = new int[STAGE_NAMES.length];
+    private int numberOfFacesPassed = 0;
+
+    /*
+     * Runs every stage up to the eye search on the face and returns the stage that rejected it, or
+     * PASSED. The eye open probabilities are only compared against the cutoff when checkEyes is
+     * true, since a GazeClassifier uses them as features instead.
+     */
+    public int check(DetectedFace face, double leftEyeOpenProbability, double rightEyeOpenProbability, boolean checkEyes) {
+        int stage = PASSED;
+        PointF leftEye = face.getLeftEye();
+        PointF rightEye = face.getRightEye();
+        PointF nose = face.getNose();
+        if (isHeadTurnedAway(face.getHeadEulerAngleX(), face.getHeadEulerAngleY(), face.getHeadEulerAngleZ())) {
+            stage = HEAD_POSE;
+        } else if (isTooSmall(face.getBoundingBox().width())) {
+            stage = FACE_SIZE;
+        } else if (checkEyes && areEyesClosed(leftEyeOpenProbability, rightEyeOpenProbability)) {
+            stage = EYES_CLOSED;
+        } else if (leftEye == null || rightEye == null || nose == null || face.getLeftEar() == null || face.getRightEar() == null) {
+            stage = MISSING_LANDMARKS;
+        } else if (isNoseOffCenter(nose.x, leftEye.x, leftEye.y, rightEye.x, rightEye.y)) {
+            stage = LANDMARK_GAZE;
+        }
+        if (stage == PASSED) {
+            numberOfFacesPassed += 1;
+        } else {
+            rejections[stage] += 1;
+        }
+        return stage;
+    }
+
+    /*
+     * Records that a face which passed the cheap stages was rejected by the eye search.
+     */
+    public void rejectAtEyeSearch() {
+        numberOfFacesPassed -= 1;
+        rejections[EYE_SEARCH] += 1;
+    }
+
+    /*
+     * Rotations the backend could not measure are NaN, which never compares greater than a limit,
+     * so they are let through.
+     */
+    static boolean isHeadTurnedAway(double pitch, double yaw, double roll) {
+        return Math.abs(yaw) > MAXIMUM_HEAD_YAW || Math.abs(pitch) > MAXIMUM_HEAD_PITCH || Math.abs(roll) > MAXIMUM_HEAD_ROLL;
+    }
+
+    static boolean isTooSmall(double faceWidth) {
+        return faceWidth < MINIMUM_FACE_WIDTH;
+    }
+
+    static boolean areEyesClosed(double leftEyeOpenProbability, double rightEyeOpenProbability) {
+        return leftEyeOpenProbability < MINIMUM_EYE_OPEN_PROBABILITY || rightEyeOpenProbability < MINIMUM_EYE_OPEN_PROBABILITY;
+    }
+
+    /*
+     * Compares how far the nose is from the point midway between the eyes with the distance
+     * between the eyes, so that the result does not depend on the size of the face.
+     */
+    static boolean isNoseOffCenter(double noseX, double leftEyeX, double leftEyeY, double rightEyeX, double rightEyeY) {
+        double eyeDistance = Geometry.computeDistanceBetweenTwoPoints(leftEyeX, leftEyeY, rightEyeX, rightEyeY);
+        if (eyeDistance <= 0) {
+            return true;
+        }
+        return Math.abs(noseX - (leftEyeX + rightEyeX) / 2) / eyeDistance > MAXIMUM_NOSE_OFFSET;
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /*
+     * Returns the number of faces rejected at each stage and the number that made it through all
+     * of them, for analyzing test results.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            summary.append(STAGE_NAMES[i]).append(": ").append(rejections[i]).append(", ");
+        }
+        summary.append("passed: ").append(numberOfFacesPassed);
+        return summary.toString();
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.ml.LogisticRegression;
+
+/*
+ * The GazeClassifier decides whether a face is looking toward the camera from a short vector of
+ * features, in place of the fixed tolerances GazeDetector otherwise compares distances against.
+ * It is a logistic regression trained offline with org.opencv.ml by GazeClassifierTrainer on
+ * sessions recorded by GazeSessionRecorder.
+ *
+ * Calling into OpenCV for every face would cost far more than the model itself, so the weights are
+ * copied out of the trained LogisticRegression once and the model is evaluated here: a dot product
+ * of NUMBER_OF_FEATURES values and one exponential. Features are written into an array the caller
+ * keeps, so neither extracting them nor evaluating them allocates anything.
+ *
+ * Every distance is divided by the distance between the two eye landmarks, so the features do not
+ * depend on how large the face is in the frame. The features are:
+ *
+ * 0, 1: the offset of the left pupil from the center of the left eye, horizontally and vertically
+ * 2, 3: the same for the right pupil and the right eye
+ * 4: the horizontal distance from the right pupil to the nose less that of the left pupil, which
+ *    is the quantity GazeDetector compares against HORIZONTAL_TOLERANCE
+ * 5: the distance between the eyes divided by the width of the face, which falls as the head turns
+ * 6, 7: the probabilities that the left and right eyes are open
+ */
+public class GazeClassifier {
+
+    public static final int NUMBER_OF_FEATURES = 8;
+
+    /*
+     * The bias followed by one weight per feature.
+     */
+    private final float[] weights;
+
+    public GazeClassifier(float[] weights) {
+        if (weights.length != NUMBER_OF_FEATURES + 1) {
+            throw new IllegalArgumentException("Expected " + (NUMBER_OF_FEATURES + 1) + " weights but got " + weights.length);
+        }
+        this.weights = weights.clone();
+    }
+
+    /*
+     * Loads a LogisticRegression saved by GazeClassifierTrainer and copies out its weights. OpenCV
+     * puts the bias first, which is the order we use as well.
+     */
+    public static GazeClassifier load(String path) {
+        LogisticRegression model = LogisticRegression.load(path);
+        Mat thetas = model.get_learnt_thetas();
+        Mat floatThetas = new Mat();
+        thetas.convertTo(floatThetas, CvType.CV_32F);
+        float[] weights = new float[(int) floatThetas.total()];
+        floatThetas.get(0, 0, weights);
+        return new GazeClassifier(weights);
+    }
+
+    /*
+     * Writes the features of one face into features, starting at offset. Everything is in image
+     * coordinates.
+     */
+    public static void extractFeatures(float[] features, int offset, double noseX,
+                                       double leftEyeX, double leftEyeY, double rightEyeX, double rightEyeY,
+                                       double leftPupilX, double leftPupilY, double rightPupilX, double rightPupilY,
+                                       double faceWidth, double leftEyeOpenProbability, double rightEyeOpenProbability) {
+        double eyeDistance = Geometry.computeDistanceBetweenTwoPoints(leftEyeX, leftEyeY, rightEyeX, rightEyeY);
+        if (eyeDistance <= 0) {
+            eyeDistance = 1;
+        }
+        features[offset] = (float) ((leftPupilX - leftEyeX) / eyeDistance);
+        features[offset + 1] = (float) ((leftPupilY - leftEyeY) / eyeDistance);
+        features[offset + 2] = (float) ((rightPupilX - rightEyeX) / eyeDistance);
+        features[offset + 3] = (float) ((rightPupilY - rightEyeY) / eyeDistance);
+        features[offset + 4] = (float) ((Math.abs(noseX - rightPupilX) - Math.abs(noseX - leftPupilX)) / eyeDistance);
+        features[offset + 5] = (float) (faceWidth > 0 ? eyeDistance / faceWidth : 0);
+        features[offset + 6] = (float) leftEyeOpenProbability;
+        features[offset + 7] = (float) rightEyeOpenProbability;
+    }
+
+    /*
+     * Returns the probability that the face whose features start at offset is looking toward the
+     * camera.
+     */
+    public double evaluate(float[] features, int offset) {
+        double sum = weights[0];
+        for (int i = 0; i < NUMBER_OF_FEATURES; i++) {
+            sum += weights[i + 1] * features[offset + i];
+        }
+        return 1.0 / (1.0 + Math.exp(-sum));
+    }
+
+}
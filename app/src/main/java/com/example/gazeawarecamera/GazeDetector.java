@@ -11,8 +11,6 @@
 
 package com.example.gazeawarecamera;
 
-import static com.example.gazeawarecamera.MainActivity.eyeCascade;
-
 import android.graphics.Bitmap;
 import android.graphics.PointF;
 import android.graphics.Rect;
@@ -20,24 +18,15 @@ import android.media.Image;
 
 import androidx.annotation.NonNull;
 
-import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceLandmark;
-
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import org.opencv.android.ImageMats;
 import org.opencv.android.Utils;
 import org.opencv.core.Core;
-import org.opencv.core.CvType;
-import org.opencv.core.KeyPoint;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfKeyPoint;
-import org.opencv.core.MatOfRect;
-import org.opencv.core.Point;
 import org.opencv.core.Size;
-import org.opencv.features2d.SimpleBlobDetector;
-import org.opencv.features2d.SimpleBlobDetector_Params;
+import org.opencv.imgproc.CLAHE;
 import org.opencv.imgproc.Imgproc;
 
 /*
@@ -53,6 +42,19 @@ public class GazeDetector {
     private static final double HORIZONTAL_TOLERANCE = 20.0;
     private static final double VERTICAL_TOLERANCE = 5.0;
 
+    /*
+     * When useHeadPoseCompensation is true, the pixel tolerances above are replaced by
+     * HeadPoseGazeModel, which allows for the size of the face and the rotation of the head.
+     */
+    public static boolean useHeadPoseCompensation = true;
+    private static final double[] gazeError = new double[2];
+
+    /*
+     * When useDirectionClassification is true, detectGazesWithDistances also gives every face one
+     * of the Directions below, from the same pupils, as detectGazesWithAngles does.
+     */
+    public static boolean useDirectionClassification = false;
+
 
     /*
      * Integers used for analyzing test results.
@@ -60,16 +62,161 @@ public class GazeDetector {
     public static int totalNumberOfGazesDetected = 0;
     public static int totalNumberOfEyesDetected = 0;
     public static int totalNumberOfPupilsDetected = 0;
+    public static long totalTimeSpentSearchingForEyes = 0;
+    public static long totalTimeSpentLocatingPupils = 0;
+
+
+    /*
+     * Finding the eyes in a face and the pupil in an eye can each be done in several ways, with
+     * very different costs. Every EyeDetector and PupilLocator we have is registered below. Our
+     * original pipeline, the full resolution cascade followed by the darkest pixel, is the
+     * reference the others are measured against. Whether a strategy found something says little
+     * about whether it found the right thing (the landmark detector always returns two boxes, and
+     * the darkest pixel always exists), so accuracy is measured by agreement with the reference
+     * instead. Every AUDIT_INTERVAL faces, and on every face where a strategy below the accuracy
+     * floor is being given another chance, the reference is run as well on the same face or eye.
+     * An eye detector agrees when each eye the reference found has the center of its box inside
+     * one of the detector's boxes. A pupil locator agrees when every pupil it found in the eyes is
+     * within PUPIL_AGREEMENT eye widths of the reference's pupil. The two stages are scored
+     * separately, and an audit the reference cannot answer (it finds no pair of eyes, or no pupil)
+     * is not counted either way.
+     *
+     * The reference starts out fully trusted and the others start right at the accuracy floor, so
+     * that they are tried but have to earn their place. Until this has been validated on devices,
+     * useAdaptiveStrategies is false and the reference pair is always used, which also means no
+     * audits are run. The registries are created the first time they are needed, since some of
+     * the strategies hold OpenCV objects and OpenCV must be loaded first. With
+     * useAdaptiveStrategies on, either registry can be pinned to a single strategy, for example to
+     * compare them.
+     */
+    public static boolean useAdaptiveStrategies = false;
+    private static final double ACCURACY_FLOOR = 0.7;
+    private static final int AUDIT_INTERVAL = 10;
+    static final double PUPIL_AGREEMENT = 0.15;
+    private static StrategyRegistry<EyeDetector> eyeDetectors;
+    private static StrategyRegistry<PupilLocator> pupilLocators;
+    private static int referenceEyeDetector;
+    private static int referencePupilLocator;
+    private static int facesSinceAudit = 0;
+    private static final double[] pupilLocation = new double[2];
+    private static final double[] referencePupilLocation = new double[2];
+
+    public static StrategyRegistry<EyeDetector> getEyeDetectors() {
+        if (eyeDetectors == null) {
+            eyeDetectors = new StrategyRegistry<EyeDetector>(ACCURACY_FLOOR);
+            referenceEyeDetector = registerEyeDetector(new CascadeEyeDetector(false), 1.0);
+            registerEyeDetector(new CascadeEyeDetector(true), ACCURACY_FLOOR);
+            registerEyeDetector(new LandmarkEyeDetector(), ACCURACY_FLOOR);
+        }
+        return eyeDetectors;
+    }
+
+    public static StrategyRegistry<PupilLocator> getPupilLocators() {
+        if (pupilLocators == null) {
+            pupilLocators = new StrategyRegistry<PupilLocator>(ACCURACY_FLOOR);
+            referencePupilLocator = registerPupilLocator(new DarkestPupilLocator(), 1.0);
+            registerPupilLocator(new IntegralPupilLocator(), ACCURACY_FLOOR);
+            registerPupilLocator(new GradientPupilLocator(), ACCURACY_FLOOR);
+            registerPupilLocator(new BlobPupilLocator(), ACCURACY_FLOOR);
+        }
+        return pupilLocators;
+    }
+
+    private static int registerEyeDetector(EyeDetector detector, double expectedAccuracy) {
+        return eyeDetectors.register(detector, detector.getName(), expectedAccuracy);
+    }
+
+    private static int registerPupilLocator(PupilLocator locator, double expectedAccuracy) {
+        return pupilLocators.register(locator, locator.getName(), expectedAccuracy);
+    }
+
+    /*
+     * Returns true if every eye box the reference found has its center inside one of the boxes
+     * being audited, and both found the same number of eyes.
+     */
+    static boolean eyeBoxesAgree(org.opencv.core.Rect[] boxes, org.opencv.core.Rect[] referenceBoxes) {
+        if (boxes.length != referenceBoxes.length) {
+            return false;
+        }
+        for (int i = 0; i < referenceBoxes.length; i++) {
+            double centerX = referenceBoxes[i].x + referenceBoxes[i].width / 2.0;
+            double centerY = referenceBoxes[i].y + referenceBoxes[i].height / 2.0;
+            boolean covered = false;
+            for (int j = 0; j < boxes.length && !covered; j++) {
+                covered = centerX >= boxes[j].x && centerX < boxes[j].x + boxes[j].width
+                        && centerY >= boxes[j].y && centerY < boxes[j].y + boxes[j].height;
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Returns true if a pupil is within PUPIL_AGREEMENT eye widths of the reference's pupil.
+     */
+    static boolean pupilsAgree(double x, double y, double referenceX, double referenceY, double eyeWidth) {
+        double dx = x - referenceX;
+        double dy = y - referenceY;
+        return Math.sqrt(dx * dx + dy * dy) <= PUPIL_AGREEMENT * eyeWidth;
+    }
+
+
+    /*
+     * In dim venues the eye crops are nearly uniformly dark, and neither minMaxLoc nor
+     * adaptiveThreshold can pick the pupil out of them. When useContrastEnhancement is true, each
+     * eye crop is passed through CLAHE (contrast limited adaptive histogram equalization) before
+     * the pupil is searched for. Only the small eye crops are enhanced, never the whole frame.
+     * Creating a CLAHE object is not free, so each thread keeps one, along with the Mat it writes
+     * into. The time spent and the number of eyes enhanced are recorded for analyzing test
+     * results.
+     */
+    public static boolean useContrastEnhancement = false;
+    public static long totalTimeSpentEnhancingContrast = 0;
+    public static int totalNumberOfEyesEnhanced = 0;
+    private static final double CLAHE_CLIP_LIMIT = 2.0;
+    private static final ThreadLocal<CLAHE> clahe = new ThreadLocal<CLAHE>() {
+        @Override
+        protected CLAHE initialValue() {
+            return Imgproc.createCLAHE(CLAHE_CLIP_LIMIT, new Size(2, 2));
+        }
+    };
+    private static final ThreadLocal<Mat> enhancedEye = new ThreadLocal<Mat>() {
+        @Override
+        protected Mat initialValue() {
+            return new Mat();
+        }
+    };
+
+    /*
+     * Returns the contrast enhanced version of the given eye, or the eye itself if contrast
+     * enhancement is turned off. The returned Mat is reused by the next call on the same thread.
+     */
+    private static Mat enhanceContrast(Mat greyEye) {
+        if (!useContrastEnhancement) {
+            return greyEye;
+        }
+        long startTime = System.nanoTime();
+        Mat enhanced = enhancedEye.get();
+        clahe.get().apply(greyEye, enhanced);
+        totalTimeSpentEnhancingContrast += System.nanoTime() - startTime;
+        totalNumberOfEyesEnhanced += 1;
+        return enhanced;
+    }
 
 
     /*
      * This enumeration allows us to classify the direction of a face's gaze. These classifications
      * will be given once the angle of the pupil relative to the center of the eye is determined.
-     * Commented next to them are the degree ranges which warrant the given classification.
+     * Commented next to them are the degree ranges which warrant the given classification. The
+     * angles are measured counterclockwise from the right of the image, with up being 90 degrees.
+     * CENTER is not a range of angles, it is given to a face whose pupils are close enough to where
+     * they would be if it were looking toward the camera.
      *
      * Contributed by Mathew.
      */
-    private enum Direction {
+    public enum Direction {
         TOP_RIGHT_LOW, // (0-44 degrees)
         TOP_RIGHT_HIGH, // (45-89 degrees)
         TOP_LEFT_HIGH, // (90-134 degrees)
@@ -77,7 +224,25 @@ public class GazeDetector {
         BOTTOM_LEFT_HIGH, // (180-224 degrees)
         BOTTOM_LEFT_LOW, // (225-269 degrees)
         BOTTOM_RIGHT_LOW, // (270-314 degrees)
-        BOTTOM_RIGHT_HIGH; // (315-359 degrees)
+        BOTTOM_RIGHT_HIGH, // (315-359 degrees)
+        CENTER;
+
+        static final int NUMBER_OF_SECTORS = 8;
+
+        /*
+         * This used to be a chain of eight comparisons, run for every pupil. Instead, we build a
+         * table with one entry for every whole degree, so finding the Direction of an angle is a
+         * single array lookup. Angles outside 0 to 359 degrees, such as the negative angles atan2
+         * gives, are wrapped around into that range first.
+         */
+        private static final Direction[] SECTORS_BY_DEGREE = new Direction[360];
+
+        static {
+            Direction[] directions = values();
+            for (int degree = 0; degree < 360; degree++) {
+                SECTORS_BY_DEGREE[degree] = directions[degree / (360 / NUMBER_OF_SECTORS)];
+            }
+        }
 
         public static Direction getDirection(double angle) {
             /*
@@ -87,26 +252,41 @@ public class GazeDetector {
              * directions rather than working with precise angles due to the imprecise nature of
              * image processing.
              */
-            if (angle >= 0 && angle < 45) {
-                return TOP_RIGHT_LOW;
-            } else if (angle >= 45 && angle < 90) {
-                return TOP_RIGHT_HIGH;
-            } else if (angle >= 90 && angle < 135) {
-                return TOP_LEFT_HIGH;
-            } else if (angle >= 135 && angle < 180) {
-                return TOP_LEFT_LOW;
-            } else if (angle >= 180 && angle < 225) {
-                return BOTTOM_LEFT_HIGH;
-            } else if (angle >= 225 && angle < 270) {
-                return BOTTOM_LEFT_LOW;
-            } else if (angle >= 270 && angle < 315) {
-                return BOTTOM_RIGHT_LOW;
-            } else {
-                return BOTTOM_RIGHT_HIGH;
+            int degree = (int) Math.floor(angle) % 360;
+            if (degree < 0) {
+                degree += 360;
             }
+            return SECTORS_BY_DEGREE[degree];
+        }
+
+        /*
+         * Returns how many sectors apart two of the eight directional zones are, going the short
+         * way around, from 0 to 4.
+         */
+        static int getSectorDistance(Direction first, Direction second) {
+            int distance = Math.abs(first.ordinal() - second.ordinal());
+            return Math.min(distance, NUMBER_OF_SECTORS - distance);
         }
     }
 
+    /*
+     * Returns the part of a face bounding box that lies inside the image, as an OpenCV Rect, or
+     * null if none of it does. Both face backends can report boxes that stick out of the frame for
+     * faces at its border, and taking a submatrix with such a box throws a CvException. Clipping
+     * only ever moves the left and top edges up to 0, which is what the eye detectors assume when
+     * they place the face landmarks in the face submatrix.
+     */
+    static org.opencv.core.Rect clipToImage(Rect faceBoundingBox, Mat image) {
+        int left = Math.max(0, faceBoundingBox.left);
+        int top = Math.max(0, faceBoundingBox.top);
+        int right = Math.min(image.cols(), faceBoundingBox.right);
+        int bottom = Math.min(image.rows(), faceBoundingBox.bottom);
+        if (right <= left || bottom <= top) {
+            return null;
+        }
+        return new org.opencv.core.Rect(left, top, right - left, bottom - top);
+    }
+
     private static Object changeRect(Object rectangle) {
         /*
          * A method that converts from Android Graphics Rect to OpenCV Core Rect. These classes
@@ -156,86 +336,158 @@ public class GazeDetector {
         return bitmap;
     }
 
-    private static Mat imageToGreyMatrix(Image image) {
+    static final ImageMats imageMats = new ImageMats();
+
+    static Mat imageToGreyMatrix(Image image) {
         /*
          * This method takes in the Image object generated by the camera and returns a Mat object
-         * that we can use with OpenCV's image processing methods. This method is actually in the
-         * OpenCV library, but it is private. The code for this method, however, is available on
-         * the OpenCV Github repository here:
-         * https://github.com/opencv/opencv/blob/master/modules/java/generator/android-21/java/org/opencv/android/JavaCamera2View.java
+         * that we can use with OpenCV's image processing methods. The Y plane of the image already
+         * is a grey image, so the Mat is just a view of it, and nothing is copied. We share this
+         * with JavaCamera2View through ImageMats, which keeps the view between calls so that
+         * MainActivity and the detect methods asking for the same image get the same Mat. The Mat
+         * belongs to imageMats, so it must not be released, and it is only valid until the image
+         * is closed.
          */
-        Image.Plane[] planes = image.getPlanes();
-        int w = image.getWidth();
-        int h = image.getHeight();
-        assert(planes[0].getPixelStride() == 1);
-        ByteBuffer y_plane = planes[0].getBuffer();
-        int y_plane_step = planes[0].getRowStride();
-        return new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
+        return imageMats.y(image);
     }
 
     /*
-     * Our most up to date method for finding pupils, contributed by Mathew using some code from
-     * http://romanhosek.cz/android-eye-detection-and-tracking-with-opencv/
-     * and most code from the getPupilCoordinatesWithBlobDetectorMethod
+     * The grey image comes in the orientation of the camera sensor, but the face backends report
+     * faces in the coordinates of the image after it has been turned upright. Before the faces can
+     * be looked up in the grey image, it must be turned upright as well. The rotated image is
+     * written into destination, which the caller keeps between frames so that it is only
+     * allocated when the size of the frames changes. An image that is already upright is
+     * returned as it is.
      */
-    private static ArrayList<Point> getPupilCoordinatesWithDarkestLocation(Mat greyImage, Rect faceBoundingBox) {
+    static Mat rotateUpright(Mat greyImage, int rotationDegrees, Mat destination) {
+        switch (rotationDegrees) {
+            case 90:
+                Core.rotate(greyImage, destination, Core.ROTATE_90_CLOCKWISE);
+                return destination;
+            case 180:
+                Core.rotate(greyImage, destination, Core.ROTATE_180);
+                return destination;
+            case 270:
+                Core.rotate(greyImage, destination, Core.ROTATE_90_COUNTERCLOCKWISE);
+                return destination;
+            default:
+                return greyImage;
+        }
+    }
+
+    /*
+     * This method finds the candidate pupil coordinates for one face, using whichever EyeDetector
+     * and PupilLocator the registries select. It grew out of our two original methods, contributed
+     * by Mathew, John, and Brayden, which now live on as the CascadeEyeDetector and the darkest
+     * and blob PupilLocators. The coordinates are written into candidateXs and candidateYs, in the
+     * coordinates of the original image, and the number of them is returned.
+     */
+    private static int getPupilCoordinates(Mat greyImage, Rect faceBoundingBox, DetectedFace face) {
         /*
          * First, we need to create a matrix of just the face we are looking at from the original
-         * image. This is easy to accomplish using our face bounding box, we just need to change it
-         * to an OpenCV bounding box first.
+         * image. This is easy to accomplish using our face bounding box, we just need to clip it
+         * to the image and change it to an OpenCV bounding box first.
          */
-        Mat greyFace = new Mat(greyImage, (org.opencv.core.Rect) changeRect(faceBoundingBox));
-        /*
-         * Now, to eliminate false detections by the CascadeClassifier, we will further constrain
-         * the search area to just the top half of the face. This will eliminate nostrils from the
-         * image.
-         */
-        Mat croppedFace = new Mat(greyFace, new org.opencv.core.Rect(0, 0, greyFace.cols(), greyFace.rows()/2));
+        org.opencv.core.Rect faceRect = clipToImage(faceBoundingBox, greyImage);
+        if (faceRect == null) {
+            return 0;
+        }
+        Mat greyFace = new Mat(greyImage, faceRect);
         /*
-         * detectMultiScale initializes a MatOfRect of object. This is a matrix where each element
-         * is a rectangle - the eye bounding boxes. The third and fourth arguments for
-         * detectMultiScale are scaleFactor and minNeighbors, where higher scaleFactor typically
-         * results in more detection, and higher minNeighbours results in lower detection. We found
-         * a balance successfully detects eyes most of the time. Finally, MatOfRect has a
-         * convenient method which allows us to convert it to an array. This will make it much
-         * easier to work with
+         * Next we find the eyes. Whichever detector is used, the bounding boxes it returns are in
+         * the coordinates of the face.
          */
-        MatOfRect eyes = new MatOfRect();
-        eyeCascade.detectMultiScale(croppedFace, eyes, 1.3, 25);
-        org.opencv.core.Rect[] eyeBoundingBoxes = eyes.toArray();
+        StrategyRegistry<EyeDetector> detectors = getEyeDetectors();
+        StrategyRegistry<PupilLocator> locators = getPupilLocators();
+        int selectedEyeDetector = referenceEyeDetector;
+        int selectedPupilLocator = referencePupilLocator;
+        boolean auditing = false;
+        if (useAdaptiveStrategies) {
+            selectedEyeDetector = detectors.select();
+            selectedPupilLocator = locators.select();
+            facesSinceAudit += 1;
+            auditing = facesSinceAudit >= AUDIT_INTERVAL
+                    || detectors.getAccuracy(selectedEyeDetector) < ACCURACY_FLOOR
+                    || locators.getAccuracy(selectedPupilLocator) < ACCURACY_FLOOR;
+            if (auditing) {
+                facesSinceAudit = 0;
+            }
+        }
+        long startTime = System.nanoTime();
+        org.opencv.core.Rect[] eyeBoundingBoxes = detectors.get(selectedEyeDetector).detectEyes(greyFace, face);
+        long elapsedTime = System.nanoTime() - startTime;
+        detectors.recordTime(selectedEyeDetector, elapsedTime);
+        totalTimeSpentSearchingForEyes += elapsedTime;
 
         totalNumberOfEyesDetected += eyeBoundingBoxes.length;
 
+        if (auditing && selectedEyeDetector != referenceEyeDetector) {
+            org.opencv.core.Rect[] referenceBoxes = detectors.get(referenceEyeDetector).detectEyes(greyFace, face);
+            if (referenceBoxes.length == 2) {
+                detectors.recordOutcome(selectedEyeDetector, eyeBoxesAgree(eyeBoundingBoxes, referenceBoxes));
+            }
+        }
+
         /*
-         * Now, we need an ArrayList to store the pupil coordinates that we find. We cannot predict
+         * Now, we need somewhere to store the pupil coordinates that we find. They are written
+         * into candidateXs and candidateYs, which are reused for every face. We cannot predict
          * the order in which the pupils will be placed, but we have a method which will figure it
          * out for us.
          */
-        ArrayList<Point> pupilCoordinates = new ArrayList<Point>();
-        /*
-         * Now we can start iterating over the
-         */
+        ensureCandidateCapacity(eyeBoundingBoxes.length);
+        PupilLocator locator = locators.get(selectedPupilLocator);
+        boolean auditingLocator = auditing && selectedPupilLocator != referencePupilLocator;
+        int pupilsAudited = 0;
+        int pupilsAgreed = 0;
+        int numberOfPupils = 0;
+        startTime = System.nanoTime();
         for (int i = 0; i < eyeBoundingBoxes.length; i++) {
             /*
              * We can use our bounding box and our face image to get the region of the eye as a Mat.
+             * In dim light we first stretch its contrast so that the pupil stands out.
              */
-            Mat greyEye = new Mat(greyFace, eyeBoundingBoxes[i]);
-            /*
-             * minMaxLoc finds the darkest region of an image.
-             */
-            Core.MinMaxLocResult pupil = Core.minMaxLoc(greyEye);
+            Mat eye = new Mat(greyFace, eyeBoundingBoxes[i]);
+            Mat enhancedEye = enhanceContrast(eye);
+            boolean found = locator.locatePupil(enhancedEye, pupilLocation);
+            if (auditingLocator && locators.get(referencePupilLocator).locatePupil(enhancedEye, referencePupilLocation)) {
+                pupilsAudited += 1;
+                if (found && pupilsAgree(pupilLocation[0], pupilLocation[1],
+                        referencePupilLocation[0], referencePupilLocation[1], eyeBoundingBoxes[i].width)) {
+                    pupilsAgreed += 1;
+                }
+            }
+            eye.close();
+            if (!found) {
+                continue;
+            }
             /*
              * We must translate the coordinates of the pupil back into the original image, so
-             * we make a new Point and sum the corners of each Matrix we've stepped through. Then
-             * we can finally add the Point to the list.
+             * we sum the corners of each Matrix we've stepped through. Then we can finally store
+             * the coordinates.
              */
-            Point pupilCoordinate = new Point(pupil.minLoc.x + eyeBoundingBoxes[i].x + faceBoundingBox.left, pupil.minLoc.y + eyeBoundingBoxes[i].y + faceBoundingBox.top);
-            pupilCoordinates.add(pupilCoordinate);
+            candidateXs[numberOfPupils] = pupilLocation[0] + eyeBoundingBoxes[i].x + faceRect.x;
+            candidateYs[numberOfPupils] = pupilLocation[1] + eyeBoundingBoxes[i].y + faceRect.y;
+            numberOfPupils += 1;
+        }
+        elapsedTime = System.nanoTime() - startTime;
+        totalTimeSpentLocatingPupils += elapsedTime;
+        if (eyeBoundingBoxes.length > 0) {
+            locators.recordTime(selectedPupilLocator, elapsedTime / eyeBoundingBoxes.length);
         }
+        if (pupilsAudited > 0) {
+            locators.recordOutcome(selectedPupilLocator, pupilsAgreed == pupilsAudited);
+        }
+
+        /*
+         * The face and eye submatrices are only headers over the image, but each one still holds
+         * a small native object. We close them as soon as we are done rather than leaving them to
+         * the finalizer.
+         */
+        greyFace.close();
 
-        System.out.println("The number of pupils detected is: " + pupilCoordinates.size());
+        System.out.println("The number of pupils detected is: " + numberOfPupils);
 
-        return pupilCoordinates;
+        return numberOfPupils;
     }
 
 
@@ -243,265 +495,419 @@ public class GazeDetector {
 
 
     /*
-     * Our deprecated method for finding pupils as of 12/10/2021
+     * Our GazeDetector takes in a List of faces and a list of candidate pupil coordinates. We need
+     * a way to associate particular candidates with the particular eye we're analyzing at a given
+     * time. Since we know that a pupil is going to be at some horizontal location between an ear
+     * and the nose, we can assign each candidate to the left eye if it lies between the left ear
+     * and the nose, and to the right eye if it lies between the nose and the right ear.
+     *
+     * This used to be done by checking, once for each eye, whether the distance from the ear to
+     * the point plus the distance from the point to the nose was exactly equal to the distance
+     * from the ear to the nose. That comparison was made between doubles computed from floats and
+     * rarely held exactly, and it walked the whole list twice. We now make a single pass over
+     * primitive coordinate arrays and compare against the interval with a small tolerance,
+     * INTERVAL_EPSILON. When more than one candidate falls in the same interval, the one closest
+     * to the face backend's landmark for that eye wins. A candidate sitting on the nose, and
+     * therefore in both intervals, goes to the eye whose landmark it is closer to.
+     *
+     * The indices of the chosen candidates are written into assignment, with the left eye first
+     * and the right eye second. An index of -1 means no candidate was found for that eye.
      */
-    private static ArrayList<Point> getPupilCoordinatesWithBlobDetector(Mat greyImage, Rect faceBoundingBox) {
-        /*
-         * https://medium.com/@stepanfilonov/tracking-your-eyes-with-python-3952e66194a6 - methodology
-         * https://www.tutorialspoint.com/java_dip/eroding_dilating.htm - values for erosion and dilation
-         *
-         * A joint effort contributed by Mathew, John, and Brayden using the help of the sources
-         * above.
-         */
-        ArrayList<Point> pupilCoordinates = new ArrayList<Point>();
-
-        Mat greyFace = new Mat(greyImage, (org.opencv.core.Rect) changeRect(faceBoundingBox));
-
-        Mat croppedFace = new Mat(greyFace, new org.opencv.core.Rect(0, 0, greyFace.cols(), greyFace.rows()/2));
-
-
-        MatOfRect eyes = new MatOfRect();
-        eyeCascade.detectMultiScale(croppedFace, eyes, 1.3, 25);
-        org.opencv.core.Rect[] eyeBoundingBoxes = eyes.toArray();
-
-        totalNumberOfEyesDetected += eyeBoundingBoxes.length;
-
-        int erosion_size = 2;
-        int dilation_size = 2;
-        Point defAnchor = new Point(-1, -1);
-        Mat erodeElement = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2 * erosion_size + 1, 2 * erosion_size + 1));
-        Mat dilationElement = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(2 * dilation_size + 1, 2 * dilation_size + 1));
-
-        SimpleBlobDetector_Params parameters = new SimpleBlobDetector_Params();
-        parameters.set_filterByCircularity(true);
-        parameters.set_minCircularity((float) 0.3);
-        parameters.set_maxCircularity((float) 1.0);
-        SimpleBlobDetector detector = SimpleBlobDetector.create(parameters);
-
-        for (int i = 0; i < eyeBoundingBoxes.length; i++) {
-
-            Mat greyEye = new Mat(greyFace, eyeBoundingBoxes[i]);
-
-            Mat binaryEye = new Mat();
+    private static final double INTERVAL_EPSILON = 1e-3;
+    static final int LEFT = 0;
+    static final int RIGHT = 1;
 
-            Imgproc.adaptiveThreshold(greyEye, binaryEye, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY, 81, 55);
-            Imgproc.erode(binaryEye, binaryEye, erodeElement, defAnchor, 2);
-            Imgproc.dilate(binaryEye, binaryEye, dilationElement, defAnchor, 4);
-            Imgproc.medianBlur(binaryEye, binaryEye, 5);
+    static void assignPupilsToEyes(double[] candidateXs, double[] candidateYs, int numberOfCandidates,
+                                   double leftEarX, double noseX, double rightEarX,
+                                   double leftEyeX, double leftEyeY, double rightEyeX, double rightEyeY,
+                                   int[] assignment) {
+        double leftMinimum = Math.min(leftEarX, noseX) - INTERVAL_EPSILON;
+        double leftMaximum = Math.max(leftEarX, noseX) + INTERVAL_EPSILON;
+        double rightMinimum = Math.min(noseX, rightEarX) - INTERVAL_EPSILON;
+        double rightMaximum = Math.max(noseX, rightEarX) + INTERVAL_EPSILON;
 
-            MatOfKeyPoint keyPoints = new MatOfKeyPoint();
-            detector.detect(binaryEye, keyPoints);
-            KeyPoint[] keyPointsArray = keyPoints.toArray();
+        assignment[LEFT] = -1;
+        assignment[RIGHT] = -1;
+        double bestLeftDistance = Double.POSITIVE_INFINITY;
+        double bestRightDistance = Double.POSITIVE_INFINITY;
 
-            for (int j = 0; j < keyPointsArray.length; j++) {
-                Point point = keyPointsArray[j].pt;
-                double adjustedX = point.x + eyeBoundingBoxes[i].x + faceBoundingBox.left;
-                double adjustedY = point.y + eyeBoundingBoxes[i].y + faceBoundingBox.top;
-                Point adjustedPoint = new Point(adjustedX, adjustedY);
-                System.out.println("Eye: " + (i + 1) + ", pupil " + (j + 1) + ": " + adjustedPoint.toString());
-                pupilCoordinates.add(adjustedPoint);
+        for (int i = 0; i < numberOfCandidates; i++) {
+            double x = candidateXs[i];
+            double y = candidateYs[i];
+            boolean inLeft = x >= leftMinimum && x <= leftMaximum;
+            boolean inRight = x >= rightMinimum && x <= rightMaximum;
+            if (!inLeft && !inRight) {
+                continue;
+            }
+            /*
+             * Squared distances are enough for comparing which candidate is closer, so we skip
+             * the square root.
+             */
+            double leftDistance = (x - leftEyeX) * (x - leftEyeX) + (y - leftEyeY) * (y - leftEyeY);
+            double rightDistance = (x - rightEyeX) * (x - rightEyeX) + (y - rightEyeY) * (y - rightEyeY);
+            if (inLeft && inRight) {
+                inLeft = leftDistance <= rightDistance;
+                inRight = !inLeft;
+            }
+            if (inLeft && leftDistance < bestLeftDistance) {
+                bestLeftDistance = leftDistance;
+                assignment[LEFT] = i;
+            } else if (inRight && rightDistance < bestRightDistance) {
+                bestRightDistance = rightDistance;
+                assignment[RIGHT] = i;
             }
-
         }
 
-        if (pupilCoordinates.size() > 2) {
-            System.out.println("Warning: SimpleBlobDetector located more than two blobs for this face. Results may be inaccurate.");
+        if (assignment[LEFT] != -1) {
+            totalNumberOfPupilsDetected += 1;
+        }
+        if (assignment[RIGHT] != -1) {
+            totalNumberOfPupilsDetected += 1;
         }
+    }
 
-        System.out.println("The number of pupils detected is: " + pupilCoordinates.size());
+    /*
+     * Scratch arrays for the candidate pupil coordinates of the face currently being analyzed. The
+     * pupil finding methods write into them and assignPupilsToEyes reads from them. They are grown
+     * when a face has more candidates than they can hold, and otherwise reused for every face.
+     */
+    private static double[] candidateXs = new double[8];
+    private static double[] candidateYs = new double[8];
+    private static final int[] pupilAssignment = new int[2];
 
-        return pupilCoordinates;
+    private static void ensureCandidateCapacity(int numberOfCandidates) {
+        if (candidateXs.length < numberOfCandidates) {
+            candidateXs = Arrays.copyOf(candidateXs, Math.max(numberOfCandidates, 2 * candidateXs.length));
+            candidateYs = Arrays.copyOf(candidateYs, candidateXs.length);
+        }
     }
 
+    /*
+     * Packed coordinate arrays (x0, y0, x1, y1, ...) holding two points per face for every face in
+     * the frame whose pupils were found, so the distances can be computed for the whole frame with
+     * the batch methods in Geometry. For face k, entries 2k and 2k + 1 belong to its left and
+     * right eye. frameFaceIndices remembers which face in the list each entry came from.
+     */
+    private static double[] frameNosePoints = new double[0];
+    private static double[] frameEyePoints = new double[0];
+    private static double[] framePupilPoints = new double[0];
+    private static double[] frameHorizontalDistances = new double[0];
+    private static double[] frameVerticalDistances = new double[0];
+    private static int[] frameFaceIndices = new int[0];
+    private static int[] frameEyeStateCrops = new int[0];
+    private static float[] frameFeatures = new float[0];
+    private static Direction[] frameDirections = new Direction[0];
+    private static double[] frameDirectionConfidences = new double[0];
+    private static final int[] frameDirectionCounts = new int[Direction.values().length];
 
-    // ---------------------------------------------------------------------------------------------
+    private static void ensureFrameCapacity(int numberOfFaces) {
+        if (frameFaceIndices.length < numberOfFaces) {
+            frameNosePoints = new double[4 * numberOfFaces];
+            frameEyePoints = new double[4 * numberOfFaces];
+            framePupilPoints = new double[4 * numberOfFaces];
+            frameHorizontalDistances = new double[2 * numberOfFaces];
+            frameVerticalDistances = new double[2 * numberOfFaces];
+            frameFaceIndices = new int[numberOfFaces];
+            frameEyeStateCrops = new int[2 * numberOfFaces];
+            frameFeatures = new float[GazeClassifier.NUMBER_OF_FEATURES * numberOfFaces];
+            frameDirections = new Direction[numberOfFaces];
+            frameDirectionConfidences = new double[numberOfFaces];
+        }
+    }
 
+    private static void putPoint(double[] points, int index, double x, double y) {
+        points[2 * index] = x;
+        points[2 * index + 1] = y;
+    }
 
     /*
-     * Our GazeDetector takes in a List of faces and an ArrayList of Points. These points represent
-     * the coordinates of the center of all of the eye pupils in the image. We need a way to
-     * associate particular points in our ArrayList with the particular face we're analyzing at a
-     * given time. Since we know that the points are going to be at some horizontal location between
-     * an ear and the nose, we can isolate these points by finding the point such that the sum of
-     * the distances between the ear and the point and the point and the nose is equal to the
-     * distance between the nose and the ear.
-     *
-     * Contributed by Mathew.
+     * When the face backend cannot tell us whether the eyes are open and an eye state network has
+     * been loaded into eyeStateBatcher, we estimate it ourselves. The eyes of every face in the
+     * frame are boxed around their landmarks and run through the network together, and the index
+     * of each eye's result is kept in frameEyeStateCrops, left eye first. An index of -1 means
+     * there is no estimate for that eye.
      */
-    private static Point isolatePupilCoordinates(ArrayList<Point> points, PointF minimumX, PointF maximumX) {
-        /*
-         * We have to iterate over the ArrayList of points. It is important to note that while an
-         * iteration like this could slow down the program, the size of the ArrayList is generally
-         * going to be 2 * the number of faces. Since we do not anticipate too many faces appearing
-         * in an image at a time, the performance hit should be negligible. One way in which we may
-         * increase performance is by removing the point from the list once it is found. While this
-         * can be done in O(1) time, Java also moves every other element over in O(n) time.
-         * Therefore, given that the anticipated data size is small, this may have negative
-         * consequences for performance rather than positive ones.
-         */
-        for (int i = 0; i < points.size(); i++) {
-            /*
-             * Get the point.
-             */
-            Point point = points.get(i);
-            /*
-             * As discussed above, we need to make 3 calculations. We are only concerned with the
-             * horizontal distance between these points. It would not benefit us to consider the
-             * actual distance between these points for the purposes of this algorithm.
-             */
-            double distanceFromMinToPoint = Geometry.computeHorizontalDistanceBetweenTwoPoints(minimumX, point);
-            double distanceFromPointToMax = Geometry.computeHorizontalDistanceBetweenTwoPoints(maximumX, point);
-            double distanceFromMinToMax = Geometry.computeHorizontalDistanceBetweenTwoPoints(minimumX, maximumX);
+    public static EyeStateBatcher eyeStateBatcher;
+    public static final FaceRejectionCascade rejectionCascade = new FaceRejectionCascade();
+    private static final LandmarkEyeDetector eyeStateEyeDetector = new LandmarkEyeDetector();
+
+    private static void estimateEyeStates(List<DetectedFace> faces, Mat imageMatrix) {
+        Arrays.fill(frameEyeStateCrops, 0, 2 * faces.size(), -1);
+        if (eyeStateBatcher == null) {
+            return;
+        }
+        eyeStateBatcher.clear();
+        for (int i = 0; i < faces.size(); i++) {
+            DetectedFace face = faces.get(i);
             /*
-             * Now, check if the sum of two smaller distances adds up to the longer distance. If it
-             * does, we have found our point, and will return it.
+             * Faces that the first stages of the rejection cascade will throw out anyway are not
+             * worth running the network on.
              */
-            if (distanceFromMinToPoint + distanceFromPointToMax == distanceFromMinToMax) {
-                totalNumberOfPupilsDetected += 1;
-                return points.get(i);
+            if (face.hasEyeClassification()
+                    || FaceRejectionCascade.isHeadTurnedAway(face.getHeadEulerAngleX(), face.getHeadEulerAngleY(), face.getHeadEulerAngleZ())
+                    || FaceRejectionCascade.isTooSmall(face.getBoundingBox().width())) {
+                continue;
             }
+            org.opencv.core.Rect faceRect = clipToImage(face.getBoundingBox(), imageMatrix);
+            if (faceRect == null) {
+                continue;
+            }
+            Mat greyFace = new Mat(imageMatrix, faceRect);
+            org.opencv.core.Rect[] eyeBoundingBoxes = eyeStateEyeDetector.detectEyes(greyFace, face);
+            if (eyeBoundingBoxes.length == 2) {
+                /*
+                 * The batcher resizes each crop into a Mat of its own, so, as in
+                 * getPupilCoordinates, the submatrices can be closed as soon as they are added.
+                 */
+                Mat leftEye = new Mat(greyFace, eyeBoundingBoxes[LEFT]);
+                frameEyeStateCrops[2 * i] = eyeStateBatcher.add(leftEye);
+                leftEye.close();
+                Mat rightEye = new Mat(greyFace, eyeBoundingBoxes[RIGHT]);
+                frameEyeStateCrops[2 * i + 1] = eyeStateBatcher.add(rightEye);
+                rightEye.close();
+            }
+            greyFace.close();
         }
-        /*
-         * If the pupils could not be found, we will return null.
-         */
-        return null;
+        eyeStateBatcher.run();
+    }
+
+    /*
+     * Returns the probability that the given eye of a face is open, or -1 if it could not be
+     * determined. It comes from the face backend if it can classify the eyes, and otherwise from
+     * the eye state network. If neither can tell us, we have to assume the eye is open.
+     */
+    private static double getEyeOpenProbability(DetectedFace face, int faceIndex, int eye) {
+        if (face.hasEyeClassification()) {
+            Float probability = eye == LEFT ? face.getLeftEyeOpenProbability() : face.getRightEyeOpenProbability();
+            return probability == null ? -1 : probability;
+        }
+        int crop = frameEyeStateCrops[2 * faceIndex + eye];
+        if (crop == -1) {
+            return 1;
+        }
+        return eyeStateBatcher.getOpenProbability(crop);
     }
 
+    /*
+     * When a GazeClassifier has been loaded into gazeClassifier, it decides whether each face is
+     * looking toward the camera instead of the fixed tolerances. When sessionRecorder is set, the
+     * features of every face are recorded for training one. The time spent evaluating the
+     * classifier is recorded for analyzing test results.
+     */
+    public static GazeClassifier gazeClassifier;
+    public static GazeSessionRecorder sessionRecorder;
+    public static long totalTimeSpentClassifyingGazes = 0;
+    public static int totalNumberOfGazesClassified = 0;
+
     /*
      * This is the primary GazeDetection method. A joint effort contributed by Mathew and John.
      */
-    public static int detectGazesWithDistances(@NonNull List<Face> faces, Image originalImage) {
+    public static int detectGazesWithDistances(@NonNull List<DetectedFace> faces, Image originalImage) {
         /*
          * First, since we are using OpenCV for image processing, we need to convert our image into
          * matrix form. Since all imageProcessing needs to be done on a greyscaled image, we do not
          * care that the matrix returned is in grey.
          */
-        Mat imageMatrix = imageToGreyMatrix(originalImage);
-        /*
-         * We assume that there is no one looking toward the camera.
-         */
-        int numberOfFacesLookingTowardCamera = 0;
+        return detectGazesWithDistances(faces, imageToGreyMatrix(originalImage));
+    }
+
+    /*
+     * This variation takes the grey image directly. It is used when the face backend was given a
+     * cropped region of the frame, in which case the face coordinates are relative to that crop
+     * and the matching grey crop must be used instead of the full image.
+     */
+    public static int detectGazesWithDistances(@NonNull List<DetectedFace> faces, Mat imageMatrix) {
+        int numberOfCandidateFaces = findCandidateFaces(faces, imageMatrix);
+        if (useDirectionClassification) {
+            classifyDirections(faces, numberOfCandidateFaces);
+        }
+        return decideGazesWithDistances(faces, numberOfCandidateFaces);
+    }
+
+    /*
+     * Both ways of detecting gazes start from the same work: rejecting the faces that cannot be
+     * looking toward the camera, finding the pupils of the rest, and packing the coordinates of
+     * every face whose pupils were found into the frame arrays. This method does that work once
+     * and returns the number of faces it packed, so that the distance and direction decisions can
+     * both be made from it without any further image processing.
+     */
+    private static int findCandidateFaces(@NonNull List<DetectedFace> faces, Mat imageMatrix) {
         /*
-         * Then, we begin iterating over the list of faces. For each face that is determined to be
-         * looking toward the camera, we will increment the value of
-         * numberOfFacesLookingTowardCamera by 1.
+         * We begin iterating over the list of faces. For each face whose pupils can be found, we
+         * pack its coordinates into the frame arrays and increment numberOfCandidateFaces by 1.
+         * The gaze of every such face is decided afterwards.
          */
+        ensureFrameCapacity(faces.size());
+        estimateEyeStates(faces, imageMatrix);
+        int numberOfCandidateFaces = 0;
         for (int i = 0; i < faces.size(); i++) {
             /*
-             * Now, we will check whether either eye is closed. If an eye is closed, than we can
-             * immediately break as we know that the face cannot be looking toward the camera.
-             * Android ML Kit can only give us a probability of a given eye being open. If this
-             * probability is not at least 90% for both eyes, we will break and move on to the next
-             * frame. Additionally, it may fail to determine a probability and return null. We
-             * handle that possibility by catching the exception and again, breaking and moving on
-             * to the next frame. Note that it should not fail to compute these probabilities if
-             * FaceDetectorOptions is configured with an appropriate classification mode.
+             * Before doing any image processing, we run the face through the cheap checks of
+             * rejectionCascade, which rule out faces that are turned away, too small, have their
+             * eyes closed or are missing landmarks. Android ML Kit can only give us a probability
+             * of a given eye being open, and we require at least 90% for both eyes. It may also
+             * fail to determine a probability, in which case getEyeOpenProbability gives -1 and
+             * the face is rejected as well. Note that it should not fail to compute these
+             * probabilities if FaceDetectorOptions is configured with an appropriate
+             * classification mode. When a GazeClassifier has been loaded, the probabilities are
+             * given to it as features instead of being compared against a fixed cutoff.
              */
-            try {
-                if (faces.get(i).getLeftEyeOpenProbability() < 0.9 || faces.get(i).getRightEyeOpenProbability() < 0.9) {
-                    System.out.println("The probability of one or more eyes on face " + (i + 1) + " being open is less than 90%.");
-                    continue;
-                }
-            } catch (NullPointerException e) {
+            double leftEyeOpenProbability = getEyeOpenProbability(faces.get(i), i, LEFT);
+            double rightEyeOpenProbability = getEyeOpenProbability(faces.get(i), i, RIGHT);
+            boolean checkEyes = gazeClassifier == null || leftEyeOpenProbability < 0 || rightEyeOpenProbability < 0;
+            int rejectedAt = rejectionCascade.check(faces.get(i), leftEyeOpenProbability, rightEyeOpenProbability, checkEyes);
+            if (rejectedAt != FaceRejectionCascade.PASSED) {
+                System.out.println("Face " + (i + 1) + " was rejected by the " + FaceRejectionCascade.getStageName(rejectedAt) + " check.");
                 continue;
             }
             /*
-             * Next, we will retrieve the landmarks we are going to be using. It is possible that ML
-             * Kit is unable to build these features, so we must check if any of them are null. If
-             * so, it will be impossible to determine the gaze of the face and therefore in this
-             * case we will terminate this iteration.
+             * Next, we will retrieve the landmarks we are going to be using. The cascade has
+             * already made sure that none of them are null.
              */
-            FaceLandmark leftEye = faces.get(i).getLandmark(FaceLandmark.LEFT_EYE);
-            FaceLandmark rightEye = faces.get(i).getLandmark(FaceLandmark.RIGHT_EYE);
-            FaceLandmark leftEar = faces.get(i).getLandmark(FaceLandmark.LEFT_EAR);
-            FaceLandmark rightEar = faces.get(i).getLandmark(FaceLandmark.RIGHT_EAR);
-            FaceLandmark nose = faces.get(i).getLandmark(FaceLandmark.NOSE_BASE);
-            if (leftEye == null || rightEye == null || leftEar == null || rightEar == null || nose == null) {
-                System.out.println("ML Kit did not find one or more of the required landmarks.");
-                continue;
-            }
+            PointF leftEye = faces.get(i).getLeftEye();
+            PointF rightEye = faces.get(i).getRightEye();
+            PointF leftEar = faces.get(i).getLeftEar();
+            PointF rightEar = faces.get(i).getRightEar();
+            PointF nose = faces.get(i).getNose();
             /*
              * Those landmarks are necessary, but they are not the only location we need to
              * determine. We also need the find the pupil coordinates. We have a method for finding
              * those, but it needs the original image as well as the area which contains the current
              * face. Since we are using OpenCV, we need our image in matrix form. We found this
              * before we starting looping. We also need to pass in the face bounding box, which
-             * we can get from the Face object. We can pass those into our method and get back the
+             * we can get from the DetectedFace. We can pass those into our method and get back the
              * list of coordinates. The list should have a size of two, but it could be larger. We
              * discuss that below.
              */
             Rect faceBoundingBox = faces.get(i).getBoundingBox();
-            ArrayList<Point> pupilCoordinates = getPupilCoordinatesWithDarkestLocation(imageMatrix, faceBoundingBox);
+            int numberOfCandidates = getPupilCoordinates(imageMatrix, faceBoundingBox, faces.get(i));
             /*
-             * We now have a list of OpenCV Point objects which correspond to the coordinates of the
-             * centers of the pupils for each eye in the current face. However, we do not know which
-             * Points correspond to which eye. We also need to handle the case that features that
-             * are not eyes are detected and returned in the list of points. To handle these cases,
-             * we have implemented an algorithm which will use the coordinates of the nose and ears
-             * to isolate the point which is between them. In the event these points are not found,
-             * the method will return null, so we need to make sure that we check for that and
-             * terminate if that is the case.
+             * We now have the coordinates of the centers of the pupils for each eye in the current
+             * face. However, we do not know which coordinates correspond to which eye. We also
+             * need to handle the case that features that are not eyes are detected and returned
+             * with them. To handle these cases, we have implemented an algorithm which will use the
+             * coordinates of the nose and ears to isolate the point which is between them. In the
+             * event these points are not found, the method will give an index of -1, so we need to
+             * make sure that we check for that and terminate if that is the case.
              */
-            Point leftPupilCenterPoint = isolatePupilCoordinates(pupilCoordinates, leftEar.getPosition(), nose.getPosition());
-            Point rightPupilCenterPoint = isolatePupilCoordinates(pupilCoordinates, nose.getPosition(), rightEar.getPosition());
+            assignPupilsToEyes(candidateXs, candidateYs, numberOfCandidates,
+                    leftEar.x, nose.x, rightEar.x,
+                    leftEye.x, leftEye.y, rightEye.x, rightEye.y,
+                    pupilAssignment);
+            int leftPupil = pupilAssignment[LEFT];
+            int rightPupil = pupilAssignment[RIGHT];
 
-            if (leftPupilCenterPoint == null) {
+            if (leftPupil == -1) {
                 System.out.println("The coordinates of the left pupil could not be determined.");
             } else {
-                System.out.println("Face: " + (i + 1) + ", left pupil: " + leftPupilCenterPoint.toString());
+                System.out.println("Face: " + (i + 1) + ", left pupil: {" + candidateXs[leftPupil] + ", " + candidateYs[leftPupil] + "}");
             }
 
-            if (rightPupilCenterPoint == null) {
+            if (rightPupil == -1) {
                 System.out.println("The coordinates of the right pupil could not be determined.");
             } else {
-                System.out.println("Face: " + (i + 1) + ", right pupil: " + rightPupilCenterPoint.toString());
+                System.out.println("Face: " + (i + 1) + ", right pupil: {" + candidateXs[rightPupil] + ", " + candidateYs[rightPupil] + "}");
             }
 
-            if (leftPupilCenterPoint == null || rightPupilCenterPoint == null) {
+            if (leftPupil == -1 || rightPupil == -1) {
+                rejectionCascade.rejectAtEyeSearch();
                 continue;
             }
-
             /*
-             * Now that we have our two pupil coordinates, we can compare their locations to the
-             * locations of landmarks. We are only concerned with an eye that is looking forward.
-             * Therefore, we want a pupil that is roughly centered on both eyes. There are two
-             * distances we will look at in making this determination. The first distance we will
-             * consider is the distance between each pupil and the nose. Imagine the following two
-             * text graphics are faces where the two Os are pupil locations and the dotted lines are
-             * distances.
-             *
-             * 1) | O-----|-O     |
-             * 2) |   O---|---O   |
-             *
-             * Notice that in 1, the distances are 5 units and 1 unit, whereas in 2,
-             * the distances are both 3 units. We consider 1 to be a face that is gazed to the left
-             * because the pupil on the left is farther from the nose than the pupil on the right.
-             * On the other hand, 2 may be considered to be looking toward the camera since the gaze
-             * does not lean to the right or left. Analogous to this, we must consider a vertical
-             * case to ensure that the face is not looking up or down. For this we compare the
-             * vertical distance of the pupils to the center of the eye cavity. The only difference
-             * in this case is that we are checking whether the pupils are above or below the center
-             * of the eyes. The next four lines of code find these four distances.
+             * This face has both of its pupils, so we pack the points we need into the frame
+             * arrays. The candidate arrays will be overwritten by the next face, so we copy the
+             * coordinates rather than remember the indices.
              */
-            double horizontalDistanceFromLeftPupilToNose = Geometry.computeHorizontalDistanceBetweenTwoPoints(nose.getPosition(), leftPupilCenterPoint);
-            double horizontalDistanceFromRightPupilToNose = Geometry.computeHorizontalDistanceBetweenTwoPoints(nose.getPosition(), rightPupilCenterPoint);
-            double verticalDistanceFromLeftPupilToLeftEye = Geometry.computeVerticalDistanceBetweenTwoPoints(leftEye.getPosition(), leftPupilCenterPoint);
-            double verticalDistanceFromRightPupilToRightEye = Geometry.computeVerticalDistanceBetweenTwoPoints(rightEye.getPosition(), rightPupilCenterPoint);
+            putPoint(frameNosePoints, 2 * numberOfCandidateFaces, nose.x, nose.y);
+            putPoint(frameNosePoints, 2 * numberOfCandidateFaces + 1, nose.x, nose.y);
+            putPoint(frameEyePoints, 2 * numberOfCandidateFaces, leftEye.x, leftEye.y);
+            putPoint(frameEyePoints, 2 * numberOfCandidateFaces + 1, rightEye.x, rightEye.y);
+            putPoint(framePupilPoints, 2 * numberOfCandidateFaces, candidateXs[leftPupil], candidateYs[leftPupil]);
+            putPoint(framePupilPoints, 2 * numberOfCandidateFaces + 1, candidateXs[rightPupil], candidateYs[rightPupil]);
+            frameFaceIndices[numberOfCandidateFaces] = i;
+            /*
+             * The classifier and the recorder both work from the features of the face, which we
+             * extract while we have everything at hand.
+             */
+            if (gazeClassifier != null || sessionRecorder != null) {
+                int offset = GazeClassifier.NUMBER_OF_FEATURES * numberOfCandidateFaces;
+                GazeClassifier.extractFeatures(frameFeatures, offset, nose.x,
+                        leftEye.x, leftEye.y, rightEye.x, rightEye.y,
+                        candidateXs[leftPupil], candidateYs[leftPupil], candidateXs[rightPupil], candidateYs[rightPupil],
+                        faces.get(i).getBoundingBox().width(), leftEyeOpenProbability, rightEyeOpenProbability);
+                if (sessionRecorder != null) {
+                    sessionRecorder.record(frameFeatures, offset);
+                }
+            }
+            numberOfCandidateFaces += 1;
+        }
+        return numberOfCandidateFaces;
+    }
+
+    private static int decideGazesWithDistances(@NonNull List<DetectedFace> faces, int numberOfCandidateFaces) {
+        /*
+         * We assume that there is no one looking toward the camera.
+         */
+        int numberOfFacesLookingTowardCamera = 0;
+        /*
+         * Now that we have our pupil coordinates, we can compare their locations to the locations
+         * of landmarks. We are only concerned with an eye that is looking forward. Therefore, we
+         * want a pupil that is roughly centered on both eyes. There are two distances we will look
+         * at in making this determination. The first distance we will consider is the distance
+         * between each pupil and the nose. Imagine the following two text graphics are faces where
+         * the two Os are pupil locations and the dotted lines are distances.
+         *
+         * 1) | O-----|-O     |
+         * 2) |   O---|---O   |
+         *
+         * Notice that in 1, the distances are 5 units and 1 unit, whereas in 2, the distances are
+         * both 3 units. We consider 1 to be a face that is gazed to the left because the pupil on
+         * the left is farther from the nose than the pupil on the right. On the other hand, 2 may
+         * be considered to be looking toward the camera since the gaze does not lean to the right
+         * or left. Analogous to this, we must consider a vertical case to ensure that the face is
+         * not looking up or down. For this we compare the vertical distance of the pupils to the
+         * center of the eye cavity. The only difference in this case is that we are checking
+         * whether the pupils are above or below the center of the eyes. The next two lines of code
+         * find these four distances for every face at once.
+         */
+        Geometry.computeHorizontalDistancesBetweenPoints(frameNosePoints, framePupilPoints, frameHorizontalDistances, 2 * numberOfCandidateFaces);
+        Geometry.computeVerticalDistancesBetweenPoints(frameEyePoints, framePupilPoints, frameVerticalDistances, 2 * numberOfCandidateFaces);
+
+        for (int k = 0; k < numberOfCandidateFaces; k++) {
+            int i = frameFaceIndices[k];
             /*
              * Now we need to determine the difference between the left and right horizontal and
              * vertical cases. Ideally, both of these differences would be 0. We allow negative
              * values to occur because this will tell us which direction the eye is looking in the
-             * horizontal case.
+             * horizontal case. The distances themselves are scalar, so we take their absolute
+             * values first.
              */
-            double horizontalDifference = horizontalDistanceFromRightPupilToNose - horizontalDistanceFromLeftPupilToNose;
-            double verticalDifference = verticalDistanceFromRightPupilToRightEye - verticalDistanceFromLeftPupilToLeftEye;
+            double horizontalDifference = Math.abs(frameHorizontalDistances[2 * k + 1]) - Math.abs(frameHorizontalDistances[2 * k]);
+            double verticalDifference = Math.abs(frameVerticalDistances[2 * k + 1]) - Math.abs(frameVerticalDistances[2 * k]);
             /*
              * With those, we can finally check whether the face is looking toward the camera.
              * Again, the ideal value for these differences is 0, but we need to account for margin
              * of error as well as allow the user a small degree of freedom, so we are checking
-             * that the differences are less than or equal to the set tolerance levels.
+             * that the differences are less than or equal to the set tolerance levels. If we have a
+             * trained classifier, we let it decide instead, and otherwise we prefer the head pose
+             * model over the fixed tolerances.
              */
-            if (Math.abs(horizontalDifference) <= HORIZONTAL_TOLERANCE && Math.abs(verticalDifference) <= VERTICAL_TOLERANCE) {
+            boolean isLookingTowardCamera;
+            if (gazeClassifier != null) {
+                long startTime = System.nanoTime();
+                isLookingTowardCamera = gazeClassifier.evaluate(frameFeatures, GazeClassifier.NUMBER_OF_FEATURES * k) >= 0.5;
+                totalTimeSpentClassifyingGazes += System.nanoTime() - startTime;
+                totalNumberOfGazesClassified += 1;
+            } else if (useHeadPoseCompensation) {
+                HeadPoseGazeModel.computeGazeError(
+                        frameEyePoints[4 * k], frameEyePoints[4 * k + 1], frameEyePoints[4 * k + 2], frameEyePoints[4 * k + 3],
+                        framePupilPoints[4 * k], framePupilPoints[4 * k + 1], framePupilPoints[4 * k + 2], framePupilPoints[4 * k + 3],
+                        faces.get(i).getHeadEulerAngleX(), faces.get(i).getHeadEulerAngleY(), gazeError);
+                isLookingTowardCamera = HeadPoseGazeModel.isWithinTolerance(gazeError);
+            } else {
+                isLookingTowardCamera = Math.abs(horizontalDifference) <= HORIZONTAL_TOLERANCE && Math.abs(verticalDifference) <= VERTICAL_TOLERANCE;
+            }
+            if (isLookingTowardCamera) {
                 System.out.println("Gaze detected on face " + (i + 1) + "!\n");
                 numberOfFacesLookingTowardCamera += 1;
                 totalNumberOfGazesDetected += 1;
@@ -524,112 +930,108 @@ public class GazeDetector {
 
 
     /*
-     * The following method attempts to determine the number of faces in the image that are
-     * looking toward the camera. Specifically, we compare the angle between the center of the image
-     * and the center of the eye cavity and the angle between the center of the eye cavity and the
-     * center of the pupil. This method may be flawed because we do not know where the camera
-     * actually lies in the image, and this would vary between hardware configurations. Where this
-     * method might be useful is in determining the exact direction someone is looking, but that is
-     * outside the scope of the project. If we have time, we may wish to determine the direction and
-     * then place it above the corresponding face bounding box.
+     * The following method determines which of eight directions each face in the image is looking
+     * in, or whether it is looking toward the camera, and returns the number of faces looking
+     * toward the camera. Our first version compared the angle between the center of the eye cavity
+     * and the center of the pupil against the angle between the center of the image and the eye,
+     * but we do not know where the camera actually lies in the image, and this would vary between
+     * hardware configurations. Instead, the direction comes from where the pupils sit in the eyes,
+     * compensated for the pose of the head by HeadPoseGazeModel, so a face is only CENTER when it
+     * would also pass the head pose check of the distance method.
+     *
+     * The faces are found in exactly the same way as in detectGazesWithDistances. Setting
+     * useDirectionClassification makes that method classify the directions as well, from the same
+     * pupils, so both results can be had for the cost of one.
      *
      * A joint effort contributed by Mathew and John.
      */
-    public static int detectGazesWithAngles(@NonNull List<Face> faces, Image image) {
+    public static int detectGazesWithAngles(@NonNull List<DetectedFace> faces, Image image) {
         /*
          * First, since we are using OpenCV for image processing, we need to convert our image into
          * matrix form. Since all imageProcessing needs to be done on a greyscaled image, we do not
          * care that the matrix returned is in grey.
          */
-        Mat imageMatrix = imageToGreyMatrix(image);
-        /*
-         * We assume that there is no one looking toward the camera.
-         */
-        int numberOfFacesLookingTowardCamera = 0;
-        /*
-         * Then, we begin iterating over the list of faces. For each face that is determined to be
-         * looking toward the camera, we will increment the value of
-         * numberOfFacesLookingTowardCamera by 1.
-         */
-        for (int i = 0; i < faces.size(); i++) {
-            /*
-             * First, we will check whether either eye is closed. If an eye is closed, than we can
-             * immediately break as we know that the face cannot be looking toward the camera.
-             * Android ML Kit can only give us a probability of a given eye being open. If this
-             * probability is not at least 90% for both eyes, we will break and move on to the next
-             * frame. Additionally, it may fail to determine a probability and return null. We
-             * handle that possibility by catching the exception and again, breaking and moving on
-             * to the next frame. Note that it should not fail to compute these probabilities if
-             * FaceDetectorOptions are configured with an appropriate classification mode.
-             */
-            try {
-                if (faces.get(i).getLeftEyeOpenProbability() < 0.9 || faces.get(i).getRightEyeOpenProbability() < 0.9) {
-                    break;
-                }
-            } catch (NullPointerException e) {
-                break;
-            }
-            /*
-             * Now we will retrieve the landmarks we are going to be using. It is possible that ML
-             * Kit is unable to build these features, so we must check if either of them are null.
-             * If so, it will be impossible to determine the gaze of the face and therefore in this
-             * case we will terminate the loop.
-             */
-            FaceLandmark leftEye = faces.get(i).getLandmark(FaceLandmark.LEFT_EYE);
-            FaceLandmark rightEye = faces.get(i).getLandmark(FaceLandmark.RIGHT_EYE);
-            FaceLandmark leftEar = faces.get(i).getLandmark(FaceLandmark.LEFT_EAR);
-            FaceLandmark rightEar = faces.get(i).getLandmark(FaceLandmark.RIGHT_EAR);
-            FaceLandmark nose = faces.get(i).getLandmark(FaceLandmark.NOSE_BASE);
-            if (leftEye == null || rightEye == null || leftEar == null || rightEar == null || nose == null) {
-                break;
-            }
-            /*
-             * Those landmarks are necessary, but they are not the only location we need to
-             * determine. We also need the find the pupil coordinates. We have a method for finding
-             * those, but it needs the original image as well as the area which contains the current
-             * face. Since we are using OpenCV, we need our image in matrix form. We found this
-             * before we starting looping. But, we also need to pass in the face bounding box, which
-             * we can obtain from ML Kit.
-             */
-            android.graphics.Rect faceBoundingBox = faces.get(i).getBoundingBox();
-            /*
-             * Now we can pass those into our method and get back the list of coordinates. The list
-             * should have a size of two, but it could be larger. We discuss that below.
-             */
-            ArrayList<Point> pupilCoordinates = getPupilCoordinatesWithBlobDetector(imageMatrix, faceBoundingBox);
+        return detectGazesWithAngles(faces, imageToGreyMatrix(image));
+    }
+
+    public static int detectGazesWithAngles(@NonNull List<DetectedFace> faces, Mat imageMatrix) {
+        int numberOfCandidateFaces = findCandidateFaces(faces, imageMatrix);
+        return classifyDirections(faces, numberOfCandidateFaces);
+    }
+
+    /*
+     * Gives a Direction and a confidence to every face packed into the frame arrays, counts how
+     * many faces are looking in each Direction, and returns the number looking toward the camera.
+     * Faces that were rejected or whose pupils could not be found get no Direction.
+     */
+    private static int classifyDirections(@NonNull List<DetectedFace> faces, int numberOfCandidateFaces) {
+        Arrays.fill(frameDirections, 0, faces.size(), null);
+        Arrays.fill(frameDirectionConfidences, 0, faces.size(), 0);
+        Arrays.fill(frameDirectionCounts, 0);
+        for (int k = 0; k < numberOfCandidateFaces; k++) {
+            int i = frameFaceIndices[k];
             /*
-             * We now have a list of OpenCV Point objects which correspond to the coordinates of the
-             * centers of the pupils for each eye in the current face. However, we do not know which
-             * Points correspond to which eye. We also need to handle the case that features that
-             * are not eyes are detected and returned in the list of points. To handle these cases,
-             * we have implemented an algorithm which will use the coordinates of the nose and ears
-             * to isolate the point which is between them. In the event these points are not found,
-             * the method will return null, so we need to make sure that we check for that and
-             * terminate if that is the case.
+             * The gaze error is how far, as fractions of the distance between the eyes, the
+             * pupils are from where they would be if the face were looking toward the camera. We
+             * measure its size in units of the tolerances, so that anything up to 1 is CENTER.
              */
-            Point leftPupilCenterPoint = isolatePupilCoordinates(pupilCoordinates, leftEar.getPosition(), nose.getPosition());
-            Point rightPupilCenterPoint = isolatePupilCoordinates(pupilCoordinates, nose.getPosition(), rightEar.getPosition());
-            if (leftPupilCenterPoint == null || rightPupilCenterPoint == null) {
-                break;
+            HeadPoseGazeModel.computeGazeError(
+                    frameEyePoints[4 * k], frameEyePoints[4 * k + 1], frameEyePoints[4 * k + 2], frameEyePoints[4 * k + 3],
+                    framePupilPoints[4 * k], framePupilPoints[4 * k + 1], framePupilPoints[4 * k + 2], framePupilPoints[4 * k + 3],
+                    faces.get(i).getHeadEulerAngleX(), faces.get(i).getHeadEulerAngleY(), gazeError);
+            double horizontalError = gazeError[0] / HeadPoseGazeModel.HORIZONTAL_TOLERANCE;
+            double verticalError = gazeError[1] / HeadPoseGazeModel.VERTICAL_TOLERANCE;
+            double errorSize = Math.sqrt(horizontalError * horizontalError + verticalError * verticalError);
+
+            Direction direction;
+            double confidence;
+            if (errorSize <= 1) {
+                /*
+                 * The closer the pupils are to where we expect them, the surer we are.
+                 */
+                direction = Direction.CENTER;
+                confidence = 1 - errorSize;
+            } else {
+                /*
+                 * The image's y axis points down, so we flip the vertical error to measure the
+                 * angle with up being 90 degrees.
+                 */
+                direction = Direction.getDirection(Math.toDegrees(Math.atan2(-gazeError[1], gazeError[0])));
+                /*
+                 * We are surer of the direction the further the pupils are outside the
+                 * tolerances, up to twice as far, and the more the two pupils agree on it. Each
+                 * pupil's own direction is the angle from the center of its eye cavity to it.
+                 */
+                double leftAngle = Geometry.computeAngleBetweenTwoPoints(frameEyePoints[4 * k], frameEyePoints[4 * k + 1], framePupilPoints[4 * k], framePupilPoints[4 * k + 1]);
+                double rightAngle = Geometry.computeAngleBetweenTwoPoints(frameEyePoints[4 * k + 2], frameEyePoints[4 * k + 3], framePupilPoints[4 * k + 2], framePupilPoints[4 * k + 3]);
+                Direction leftPupilDirection = Direction.getDirection(-leftAngle);
+                Direction rightPupilDirection = Direction.getDirection(-rightAngle);
+                int disagreement = Direction.getSectorDistance(leftPupilDirection, rightPupilDirection);
+                double agreement = disagreement == 0 ? 1 : disagreement == 1 ? 0.5 : 0;
+                confidence = agreement * Math.min(1, errorSize - 1);
             }
-            /*
-             * Now that we have our pupil coordinates, we can compute the angle between the pupil
-             * and the center of the eye cavity using the method implemented in the Geometry class.
-             */
-            double angleFromLeftPupilToEyeCenter = Geometry.computeAngleBetweenTwoPoints(leftEye.getPosition(), leftPupilCenterPoint);
-            double angleFromRightPupilToEyeCenter = Geometry.computeAngleBetweenTwoPoints(rightEye.getPosition(), rightPupilCenterPoint);
-            /*
-             * We use the Direction enumeration to reduce the angle into a statement of which of
-             * eight directional zones the face is looking toward. This gives the user a general
-             * idea of where each gaze is.
-             */
-            Direction leftPupilDirection = Direction.getDirection(angleFromLeftPupilToEyeCenter);
-            Direction rightPupilDirection = Direction.getDirection(angleFromRightPupilToEyeCenter);
+            frameDirections[i] = direction;
+            frameDirectionConfidences[i] = confidence;
+            frameDirectionCounts[direction.ordinal()] += 1;
+            System.out.println("Face " + (i + 1) + " is looking " + direction + " with confidence " + confidence + ".");
+        }
+        return frameDirectionCounts[Direction.CENTER.ordinal()];
+    }
 
-            // Stuff to do
+    /*
+     * The results of the last direction classification. getFaceDirection returns null for a face
+     * that could not be classified.
+     */
+    public static Direction getFaceDirection(int faceIndex) {
+        return frameDirections[faceIndex];
+    }
 
-        }
-        return numberOfFacesLookingTowardCamera;
+    public static double getFaceDirectionConfidence(int faceIndex) {
+        return frameDirectionConfidences[faceIndex];
+    }
+
+    public static int getNumberOfFacesLookingIn(Direction direction) {
+        return frameDirectionCounts[direction.ordinal()];
     }
 
 }
\ No newline at end of file
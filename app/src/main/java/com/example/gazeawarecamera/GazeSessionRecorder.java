@@ -0,0 +1,76 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/*
+ * The GazeSessionRecorder writes the GazeClassifier features of every face GazeDetector analyzes
+ * to a file, so that GazeClassifierTrainer can later learn from them. A session is recorded with
+ * a single label: 1 if every subject was looking toward the camera the whole time, and 0 if
+ * every subject was looking away. Each line of the file is the label followed by the features,
+ * separated by commas.
+ */
+public class GazeSessionRecorder {
+
+    private final int label;
+    private final StringBuilder line = new StringBuilder();
+    private BufferedWriter writer;
+    private int numberOfFacesRecorded = 0;
+
+    public GazeSessionRecorder(File file, int label) throws IOException {
+        this.label = label;
+        this.writer = new BufferedWriter(new FileWriter(file, true));
+    }
+
+    /*
+     * Writes the features of one face, starting at offset.
+     */
+    public void record(float[] features, int offset) {
+        if (writer == null) {
+            return;
+        }
+        line.setLength(0);
+        line.append(label);
+        for (int i = 0; i < GazeClassifier.NUMBER_OF_FEATURES; i++) {
+            line.append(',').append(features[offset + i]);
+        }
+        line.append('\n');
+        try {
+            writer.append(line);
+            numberOfFacesRecorded += 1;
+        } catch (IOException e) {
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    public int getNumberOfFacesRecorded() {
+        return numberOfFacesRecorded;
+    }
+
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+    }
+
+}
@@ -26,21 +26,31 @@ import org.opencv.core.Point;
  * class variables called x and y. This makes implementing methods with different point objects
  * easy, but may cause confusion when you read the code.
  *
+ * Every computation is also available in a primitive form which takes the coordinates as doubles,
+ * and the object variations simply pass their coordinates along to it. At the bottom of the class
+ * are batch variations which work on packed arrays of coordinates, laid out as x0, y0, x1, y1, and
+ * so on, so that the points of every face in a frame can be handled in one call without creating
+ * any point objects.
+ *
  * Contributed by Mathew and John.
  */
 public class Geometry {
     /*
-     * The first three methods are variations of a horizontal distance computation. The only
+     * The first four methods are variations of a horizontal distance computation. The only
      * difference between them are the objects they take in as arguments, as discussed above. Since
      * these methods are strictly concerned with the horizontal distance between two points, it does
      * not matter what the y value is. The solution is simply x2 - x1.
      */
+    public static double computeHorizontalDistanceBetweenTwoPoints(double firstX, double secondX) {
+        return secondX - firstX;
+    }
+
     public static double computeHorizontalDistanceBetweenTwoPoints(@NonNull Point firstPoint, @NonNull Point secondPoint) {
         /*
          * A simple method to compute the horizontal distance between two points in a 2D geometric
          * space. This method takes two OpenCV Point objects as its arguments.
          */
-        return secondPoint.x - firstPoint.x;
+        return computeHorizontalDistanceBetweenTwoPoints(firstPoint.x, secondPoint.x);
     }
 
     public static double computeHorizontalDistanceBetweenTwoPoints(@NonNull PointF firstPoint, @NonNull PointF secondPoint) {
@@ -48,7 +58,7 @@ public class Geometry {
          * A simple method to compute the horizontal distance between two points in a 2D geometric
          * space. This method takes two Ml Kit Point objects as its arguments.
          */
-        return secondPoint.x - firstPoint.x;
+        return computeHorizontalDistanceBetweenTwoPoints(firstPoint.x, secondPoint.x);
     }
 
     public static double computeHorizontalDistanceBetweenTwoPoints(@NonNull PointF firstPoint, @NonNull Point secondPoint) {
@@ -60,21 +70,25 @@ public class Geometry {
          * object, you will always get a negative number. Since we are only concerned with the
          * scalar distance anyhow, it doesn't really matter.
          */
-        return Math.abs(secondPoint.x - firstPoint.x);
+        return Math.abs(computeHorizontalDistanceBetweenTwoPoints(firstPoint.x, secondPoint.x));
     }
 
     /*
-     * The first three methods are variations of a vertical distance computation. The only
+     * The next four methods are variations of a vertical distance computation. The only
      * difference between them are the objects they take in as arguments, as discussed above. Since
      * these methods are strictly concerned with the vertical distance between two points, it does
      * not matter what the y value is. The solution is simply y2 - y1.
      */
+    public static double computeVerticalDistanceBetweenTwoPoints(double firstY, double secondY) {
+        return secondY - firstY;
+    }
+
     public static double computeVerticalDistanceBetweenTwoPoints(@NonNull Point firstPoint, @NonNull Point secondPoint) {
         /*
          * A simple method to compute the vertical distance between two points in a 2D geometric
          * space. This method takes two OpenCV Point objects as its arguments.
          */
-        return secondPoint.y - firstPoint.y;
+        return computeVerticalDistanceBetweenTwoPoints(firstPoint.y, secondPoint.y);
     }
 
     public static double computeVerticalDistanceBetweenTwoPoints(@NonNull PointF firstPoint, @NonNull PointF secondPoint) {
@@ -82,7 +96,7 @@ public class Geometry {
          * A simple method to compute the vertical distance between two points in a 2D geometric
          * space. This method takes two Ml Kit Point objects as its arguments.
          */
-        return secondPoint.y - firstPoint.y;
+        return computeVerticalDistanceBetweenTwoPoints(firstPoint.y, secondPoint.y);
     }
 
     public static double computeVerticalDistanceBetweenTwoPoints(@NonNull PointF firstPoint, @NonNull Point secondPoint) {
@@ -94,22 +108,27 @@ public class Geometry {
          * object, you will always get a negative number. Since we are only concerned with the
          * scalar distance anyhow, it doesn't really matter.
          */
-        return Math.abs(secondPoint.y - firstPoint.y);
+        return Math.abs(computeVerticalDistanceBetweenTwoPoints(firstPoint.y, secondPoint.y));
     }
 
     /*
-     * The next three methods are variations of a distance computation. The only difference between
+     * The next four methods are variations of a distance computation. The only difference between
      * them are the objects they take in as arguments, as discussed above. The method computes the
-     * two differences x2 - x1 and y2 - y1 first and then returns from the
+     * two differences x2 - x1 and y2 - y1 first and then returns the square root of the sum of
+     * their squares.
      */
+    public static double computeDistanceBetweenTwoPoints(double firstX, double firstY, double secondX, double secondY) {
+        double differenceInX = secondX - firstX;
+        double differenceInY = secondY - firstY;
+        return Math.sqrt(differenceInX * differenceInX + differenceInY * differenceInY);
+    }
+
     public static double computeDistanceBetweenTwoPoints(@NonNull Point firstPoint, @NonNull Point secondPoint) {
         /*
          * A simple method to compute the distance between two points in a 2D geometric space. This
          * method takes two OpenCV Point objects as its arguments.
          */
-        double differenceInX = secondPoint.x - firstPoint.x;
-        double differenceInY = secondPoint.y - firstPoint.y;
-        return Math.sqrt(Math.pow(differenceInX, 2) - Math.pow(differenceInY, 2.0));
+        return computeDistanceBetweenTwoPoints(firstPoint.x, firstPoint.y, secondPoint.x, secondPoint.y);
     }
 
     public static double computeDistanceBetweenTwoPoints(@NonNull PointF firstPoint, @NonNull PointF secondPoint) {
@@ -117,9 +136,7 @@ public class Geometry {
          * A simple method to compute the distance between two points in a 2D geometric space. This
          * method takes two Ml Kit Point objects as its arguments.
          */
-        double differenceInX = secondPoint.x - firstPoint.x;
-        double differenceInY = secondPoint.y - firstPoint.y;
-        return Math.sqrt(Math.pow(differenceInX, 2) - Math.pow(differenceInY, 2.0));
+        return computeDistanceBetweenTwoPoints(firstPoint.x, firstPoint.y, secondPoint.x, secondPoint.y);
     }
 
     public static double computeDistanceBetweenTwoPoints(@NonNull PointF firstPoint, @NonNull Point secondPoint) {
@@ -128,13 +145,11 @@ public class Geometry {
          * method takes one ML Kit PointF object as firstPoint and one OpenCV Point object as
          * secondPoint.
          */
-        double differenceInX = secondPoint.x - firstPoint.x;
-        double differenceInY = secondPoint.y - firstPoint.y;
-        return Math.sqrt(Math.pow(differenceInX, 2) - Math.pow(differenceInY, 2.0));
+        return computeDistanceBetweenTwoPoints(firstPoint.x, firstPoint.y, secondPoint.x, secondPoint.y);
     }
 
     /*
-     * The next three methods compute the angle between two points. The three variations of this
+     * The next four methods compute the angle between two points. The variations of this
      * method, once more, correspond to the different point object combinations we may use. The
      * calculation is made by considering one point to be the center of the circle from which the
      * angle is being considered. To that end, a difference in x and y are computed which transform
@@ -142,24 +157,23 @@ public class Geometry {
      * of the new Y divided by the new X yields the angle, which is returned after a covnersion to
      * degrees.
      */
+    public static double computeAngleBetweenTwoPoints(double centerX, double centerY, double relativeX, double relativeY) {
+        double answerInRadians = Math.atan2(relativeY - centerY, relativeX - centerX);
+        return Math.toDegrees(answerInRadians);
+    }
+
     public static double computeAngleBetweenTwoPoints(@NonNull Point centerPoint, @NonNull Point relativePoint) {
         /*
          * This method takes two OpenCV Point objects as its arguments.
          */
-        double differenceInY = relativePoint.y - centerPoint.y;
-        double differenceInX = relativePoint.x - centerPoint.x;
-        double answerInRadians = Math.atan2(differenceInY, differenceInX);
-        return Math.toDegrees(answerInRadians);
+        return computeAngleBetweenTwoPoints(centerPoint.x, centerPoint.y, relativePoint.x, relativePoint.y);
     }
 
     public static double computeAngleBetweenTwoPoints(@NonNull PointF centerPoint, @NonNull PointF relativePoint) {
         /*
          * This method takes two ML Kit PointF objects as its arguments.
          */
-        double differenceInY = relativePoint.y - centerPoint.y;
-        double differenceInX = relativePoint.x - centerPoint.x;
-        double answerInRadians = Math.atan2(differenceInY, differenceInX);
-        return Math.toDegrees(answerInRadians);
+        return computeAngleBetweenTwoPoints(centerPoint.x, centerPoint.y, relativePoint.x, relativePoint.y);
     }
 
     public static double computeAngleBetweenTwoPoints(@NonNull PointF centerPoint, @NonNull Point relativePoint) {
@@ -167,10 +181,40 @@ public class Geometry {
          * This method takes one ML Kit PointF object as centerPoint and one OpenCV Point object as
          * relativePoint.
          */
-        double differenceInY = relativePoint.y - centerPoint.y;
-        double differenceInX = relativePoint.x - centerPoint.x;
-        double answerInRadians = Math.atan2(differenceInY, differenceInX);
-        return Math.toDegrees(answerInRadians);
+        return computeAngleBetweenTwoPoints(centerPoint.x, centerPoint.y, relativePoint.x, relativePoint.y);
+    }
+
+    /*
+     * The last four methods are the batch variations. Each one takes two packed arrays of points
+     * and writes the result for the i-th pair of points into results[i]. The caller owns all of the
+     * arrays, so they can be allocated once and reused for every frame.
+     */
+    public static void computeHorizontalDistancesBetweenPoints(double[] firstPoints, double[] secondPoints, double[] results, int numberOfPoints) {
+        for (int i = 0; i < numberOfPoints; i++) {
+            results[i] = secondPoints[2 * i] - firstPoints[2 * i];
+        }
+    }
+
+    public static void computeVerticalDistancesBetweenPoints(double[] firstPoints, double[] secondPoints, double[] results, int numberOfPoints) {
+        for (int i = 0; i < numberOfPoints; i++) {
+            results[i] = secondPoints[2 * i + 1] - firstPoints[2 * i + 1];
+        }
+    }
+
+    public static void computeDistancesBetweenPoints(double[] firstPoints, double[] secondPoints, double[] results, int numberOfPoints) {
+        for (int i = 0; i < numberOfPoints; i++) {
+            double differenceInX = secondPoints[2 * i] - firstPoints[2 * i];
+            double differenceInY = secondPoints[2 * i + 1] - firstPoints[2 * i + 1];
+            results[i] = Math.sqrt(differenceInX * differenceInX + differenceInY * differenceInY);
+        }
+    }
+
+    public static void computeAnglesBetweenPoints(double[] centerPoints, double[] relativePoints, double[] results, int numberOfPoints) {
+        for (int i = 0; i < numberOfPoints; i++) {
+            double differenceInX = relativePoints[2 * i] - centerPoints[2 * i];
+            double differenceInY = relativePoints[2 * i + 1] - centerPoints[2 * i + 1];
+            results[i] = Math.toDegrees(Math.atan2(differenceInY, differenceInX));
+        }
     }
 
 }
@@ -0,0 +1,225 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * The GradientPupilLocator finds the center of a pupil using the image gradient method described by
+ * Timm and Barth in "Accurate Eye Centre Localisation by Means of Gradients" (2011). Instead of
+ * picking the single darkest pixel, which is easily fooled by eyelashes, shadows and the frames of
+ * glasses, it looks for the point that the most edges in the eye point toward. The edge of a
+ * pupil is a circle, so every gradient on it points away from the center, and that center wins by
+ * a wide margin.
+ *
+ * For a candidate center c, every pixel x with a strong gradient g contributes (d . g)^2, where d
+ * is the unit vector from c to x. Only gradients pointing away from c count. Each candidate is
+ * also weighted by how dark it is, since the center of the pupil is dark.
+ *
+ * The objective is quadratic in the number of pixels, so the eye is first shrunk to PATCH_WIDTH
+ * pixels wide. The unit vectors d depend only on the offset between c and x, so they are computed
+ * once per patch size and kept in a table. All other buffers are primitive arrays that are kept
+ * between calls, so locating a pupil allocates nothing once the buffers have grown.
+ */
+public class GradientPupilLocator implements PupilLocator {
+
+    private static final int PATCH_WIDTH = 40;
+
+    /*
+     * Timm and Barth only keep gradients whose magnitude is above the mean magnitude plus
+     * GRADIENT_THRESHOLD standard deviations.
+     */
+    private static final double GRADIENT_THRESHOLD = 0.3;
+
+    private final Mat patch = new Mat();
+    private final Mat blurredPatch = new Mat();
+    private final Size patchSize = new Size();
+    private final Size blurSize = new Size(5, 5);
+
+    private byte[] pixels = new byte[0];
+    private byte[] blurredPixels = new byte[0];
+    private float[] gradientXs = new float[0];
+    private float[] gradientYs = new float[0];
+    private int[] gradientIndices = new int[0];
+    private int[] gradientColumns = new int[0];
+    private int[] gradientRows = new int[0];
+
+    /*
+     * The displacement table holds the unit vector for every offset (dx, dy) between -(size - 1)
+     * and size - 1 in each direction, for the patch size it was last built for.
+     */
+    private float[] displacementXs = new float[0];
+    private float[] displacementYs = new float[0];
+    private int tableWidth = -1;
+    private int tableHeight = -1;
+
+    /*
+     * Locates the pupil in the given grey eye image and writes its coordinates, relative to the
+     * top left corner of the eye, into result[0] and result[1]. Eyes too small to search are given
+     * their center, and false is returned.
+     */
+    @Override
+    public boolean locatePupil(Mat greyEye, double[] result) {
+        /*
+         * First, shrink the eye to the patch size. Eyes that are already small are left alone.
+         */
+        double scale = 1.0;
+        Mat source = greyEye;
+        if (greyEye.cols() > PATCH_WIDTH) {
+            scale = (double) PATCH_WIDTH / greyEye.cols();
+            patchSize.width = PATCH_WIDTH;
+            patchSize.height = Math.max(1, Math.round(greyEye.rows() * scale));
+            Imgproc.resize(greyEye, patch, patchSize, 0, 0, Imgproc.INTER_AREA);
+            source = patch;
+        } else if (!greyEye.isContinuous()) {
+            greyEye.copyTo(patch);
+            source = patch;
+        }
+        int width = source.cols();
+        int height = source.rows();
+        int size = width * height;
+        if (width < 3 || height < 3) {
+            result[0] = (width / 2.0) / scale;
+            result[1] = (height / 2.0) / scale;
+            return false;
+        }
+
+        ensureCapacity(size);
+        source.get(0, 0, pixels);
+        Imgproc.GaussianBlur(source, blurredPatch, blurSize, 0);
+        blurredPatch.get(0, 0, blurredPixels);
+        buildDisplacementTable(width, height);
+
+        /*
+         * Compute the gradient of every interior pixel with central differences, along with the
+         * mean and standard deviation of the magnitudes.
+         */
+        double sum = 0;
+        double sumOfSquares = 0;
+        int count = 0;
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int index = y * width + x;
+                float gx = ((pixels[index + 1] & 0xFF) - (pixels[index - 1] & 0xFF)) * 0.5f;
+                float gy = ((pixels[index + width] & 0xFF) - (pixels[index - width] & 0xFF)) * 0.5f;
+                gradientXs[index] = gx;
+                gradientYs[index] = gy;
+                double magnitude = Math.sqrt(gx * gx + gy * gy);
+                sum += magnitude;
+                sumOfSquares += magnitude * magnitude;
+                count += 1;
+            }
+        }
+        double mean = sum / count;
+        double standardDeviation = Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+        double threshold = mean + GRADIENT_THRESHOLD * standardDeviation;
+
+        /*
+         * Keep only the strong gradients, normalized to unit length, and remember where they are
+         * so the objective loop below does not have to visit the weak ones.
+         */
+        int numberOfGradients = 0;
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int index = y * width + x;
+                float gx = gradientXs[index];
+                float gy = gradientYs[index];
+                double magnitude = Math.sqrt(gx * gx + gy * gy);
+                if (magnitude > threshold && magnitude > 0) {
+                    gradientXs[index] = (float) (gx / magnitude);
+                    gradientYs[index] = (float) (gy / magnitude);
+                    gradientIndices[numberOfGradients] = index;
+                    gradientColumns[numberOfGradients] = x;
+                    gradientRows[numberOfGradients] = y;
+                    numberOfGradients += 1;
+                }
+            }
+        }
+
+        /*
+         * Now evaluate the objective at every candidate center and keep the best one.
+         */
+        int tableRow = 2 * width - 1;
+        double bestScore = -1;
+        int bestX = width / 2;
+        int bestY = height / 2;
+        for (int cy = 0; cy < height; cy++) {
+            for (int cx = 0; cx < width; cx++) {
+                float score = 0;
+                for (int g = 0; g < numberOfGradients; g++) {
+                    int index = gradientIndices[g];
+                    int tableIndex = (gradientRows[g] - cy + height - 1) * tableRow + (gradientColumns[g] - cx + width - 1);
+                    float dot = displacementXs[tableIndex] * gradientXs[index] + displacementYs[tableIndex] * gradientYs[index];
+                    if (dot > 0) {
+                        score += dot * dot;
+                    }
+                }
+                double weightedScore = score * (255 - (blurredPixels[cy * width + cx] & 0xFF));
+                if (weightedScore > bestScore) {
+                    bestScore = weightedScore;
+                    bestX = cx;
+                    bestY = cy;
+                }
+            }
+        }
+
+        /*
+         * Finally, map the center of the winning patch pixel back to the scale of the eye.
+         */
+        result[0] = (bestX + 0.5) / scale - 0.5;
+        result[1] = (bestY + 0.5) / scale - 0.5;
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "gradient";
+    }
+
+    private void ensureCapacity(int size) {
+        if (pixels.length < size) {
+            pixels = new byte[size];
+            blurredPixels = new byte[size];
+            gradientXs = new float[size];
+            gradientYs = new float[size];
+            gradientIndices = new int[size];
+            gradientColumns = new int[size];
+            gradientRows = new int[size];
+        }
+    }
+
+    private void buildDisplacementTable(int width, int height) {
+        if (width == tableWidth && height == tableHeight) {
+            return;
+        }
+        int tableColumns = 2 * width - 1;
+        int tableRows = 2 * height - 1;
+        displacementXs = new float[tableColumns * tableRows];
+        displacementYs = new float[tableColumns * tableRows];
+        for (int row = 0; row < tableRows; row++) {
+            int dy = row - (height - 1);
+            for (int column = 0; column < tableColumns; column++) {
+                int dx = column - (width - 1);
+                double length = Math.sqrt(dx * dx + dy * dy);
+                if (length > 0) {
+                    displacementXs[row * tableColumns + column] = (float) (dx / length);
+                    displacementYs[row * tableColumns + column] = (float) (dy / length);
+                }
+            }
+        }
+        tableWidth = width;
+        tableHeight = height;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+/*
+ * The HeadPoseGazeModel decides whether a face is looking toward the camera from where its pupils
+ * sit in its eyes, allowing for the size of the face and the rotation of the head. The fixed
+ * tolerances GazeDetector otherwise uses are in pixels, so they are too strict for faces far from
+ * the camera and too loose for faces near it, and they reject anyone whose head is turned even
+ * when their eyes are on the camera.
+ *
+ * Every offset is divided by the distance between the eyes, which makes it independent of the
+ * size of the face. The roll of the head is undone by measuring the offsets along and across the
+ * line between the eyes rather than along the axes of the image. This is the rotation
+ * getHeadEulerAngleZ describes, but measured from the same landmarks as the offsets themselves.
+ *
+ * The yaw and pitch cannot be undone that way, so we predict their effect instead. The eye
+ * landmarks lie on the surface of the eye, about one eyeball radius in front of the center of
+ * the eyeball. When the head turns by an angle while the eyes stay on the camera, the landmarks
+ * swing around the eyeball centers, and the pupils appear offset from the landmarks by the radius
+ * times the sine of that angle, against the turn. The turn also foreshortens the distance between
+ * the eyes by the cosine of the yaw, which we correct for before normalizing. We follow ML Kit's
+ * convention, where a positive Y angle turns the face toward the right of the image and a
+ * positive X angle tilts it up. Angles the backend could not measure are taken to be zero.
+ *
+ * Everything is done with primitive math, so the check costs a few dozen floating point
+ * operations per face and can run on every frame.
+ */
+public class HeadPoseGazeModel {
+
+    /*
+     * The radius of the eyeball, about 12 mm, as a fraction of the distance between the eyes,
+     * about 63 mm.
+     */
+    static final double EYEBALL_RADIUS = 0.19;
+    static final double HORIZONTAL_TOLERANCE = 0.08;
+    static final double VERTICAL_TOLERANCE = 0.08;
+
+    /*
+     * Returns the horizontal and vertical difference between where the pupils are and where they
+     * would be if the face were looking toward the camera, as fractions of the distance between
+     * the eyes, in result[0] and result[1]. The pitch and yaw are in degrees.
+     */
+    static void computeGazeError(double leftEyeX, double leftEyeY, double rightEyeX, double rightEyeY,
+                                 double leftPupilX, double leftPupilY, double rightPupilX, double rightPupilY,
+                                 double pitch, double yaw, double[] result) {
+        if (Double.isNaN(pitch)) {
+            pitch = 0;
+        }
+        if (Double.isNaN(yaw)) {
+            yaw = 0;
+        }
+        /*
+         * The unit vector along the line from the right eye to the left eye, and the distance
+         * between them. The subject's right eye is on the left of the image.
+         */
+        double alongX = leftEyeX - rightEyeX;
+        double alongY = leftEyeY - rightEyeY;
+        double eyeDistance = Math.sqrt(alongX * alongX + alongY * alongY);
+        if (eyeDistance <= 0) {
+            result[0] = Double.POSITIVE_INFINITY;
+            result[1] = Double.POSITIVE_INFINITY;
+            return;
+        }
+        alongX /= eyeDistance;
+        alongY /= eyeDistance;
+        /*
+         * The average offset of the two pupils from their eyes, measured along the eye line and
+         * across it. Across is a quarter turn clockwise from along, which points down the face.
+         */
+        double offsetX = ((leftPupilX - leftEyeX) + (rightPupilX - rightEyeX)) / 2;
+        double offsetY = ((leftPupilY - leftEyeY) + (rightPupilY - rightEyeY)) / 2;
+        double along = offsetX * alongX + offsetY * alongY;
+        double across = -offsetX * alongY + offsetY * alongX;
+
+        double yawRadians = Math.toRadians(yaw);
+        double pitchRadians = Math.toRadians(pitch);
+        double trueEyeDistance = eyeDistance / Math.max(Math.cos(yawRadians), 0.1);
+
+        double expectedAlong = -EYEBALL_RADIUS * Math.sin(yawRadians);
+        double expectedAcross = EYEBALL_RADIUS * Math.sin(pitchRadians);
+        result[0] = along / trueEyeDistance - expectedAlong;
+        result[1] = across / trueEyeDistance - expectedAcross;
+    }
+
+    static boolean isWithinTolerance(double[] gazeError) {
+        return Math.abs(gazeError[0]) <= HORIZONTAL_TOLERANCE && Math.abs(gazeError[1]) <= VERTICAL_TOLERANCE;
+    }
+
+}
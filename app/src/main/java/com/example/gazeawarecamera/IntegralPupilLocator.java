@@ -0,0 +1,135 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/*
+ * The IntegralPupilLocator finds the darkest square region of an eye rather than the darkest
+ * single pixel. A lone dark pixel is often just noise, but the pupil is a dark disc several pixels
+ * across, so the window of about that size with the lowest total brightness is a much more stable
+ * estimate of where it is.
+ *
+ * Summing every window directly would be slow, so we build one integral image of the eye with
+ * Imgproc.integral. Entry (x, y) of the integral image holds the sum of every pixel above and to
+ * the left of (x, y), which means the sum of any rectangle can be found from its four corners in
+ * constant time. We search with several window sizes, each a fraction of the eye width, since we
+ * do not know how large the pupil is. The best position for each size is refined to sub-pixel
+ * accuracy by fitting a parabola through its neighbors, and the final center is the average over
+ * all of the sizes.
+ */
+public class IntegralPupilLocator implements PupilLocator {
+
+    /*
+     * The window sizes we search with, as fractions of the eye width.
+     */
+    private static final double[] WINDOW_FRACTIONS = {0.15, 0.2, 0.25};
+
+    private final Mat integralImage = new Mat();
+    private int[] sums = new int[0];
+
+    /*
+     * Locates the pupil in the given grey eye image and writes its coordinates, relative to the
+     * top left corner of the eye, into result[0] and result[1]. Eyes too small to search are given
+     * their center, and false is returned.
+     */
+    @Override
+    public boolean locatePupil(Mat greyEye, double[] result) {
+        int width = greyEye.cols();
+        int height = greyEye.rows();
+        Imgproc.integral(greyEye, integralImage, CvType.CV_32S);
+        int stride = width + 1;
+        int size = stride * (height + 1);
+        if (sums.length < size) {
+            sums = new int[size];
+        }
+        integralImage.get(0, 0, sums);
+
+        double totalX = 0;
+        double totalY = 0;
+        int numberOfWindows = 0;
+        for (int f = 0; f < WINDOW_FRACTIONS.length; f++) {
+            int k = Math.max(1, (int) Math.round(width * WINDOW_FRACTIONS[f]));
+            if (k > width || k > height) {
+                continue;
+            }
+            /*
+             * Find the top left corner of the k by k window with the smallest sum.
+             */
+            int bestX = 0;
+            int bestY = 0;
+            int bestSum = Integer.MAX_VALUE;
+            for (int y = 0; y + k <= height; y++) {
+                for (int x = 0; x + k <= width; x++) {
+                    int windowSum = windowSum(x, y, k, stride);
+                    if (windowSum < bestSum) {
+                        bestSum = windowSum;
+                        bestX = x;
+                        bestY = y;
+                    }
+                }
+            }
+            double offsetX = 0;
+            double offsetY = 0;
+            if (bestX > 0 && bestX + k < width) {
+                offsetX = parabolicOffset(windowSum(bestX - 1, bestY, k, stride), bestSum, windowSum(bestX + 1, bestY, k, stride));
+            }
+            if (bestY > 0 && bestY + k < height) {
+                offsetY = parabolicOffset(windowSum(bestX, bestY - 1, k, stride), bestSum, windowSum(bestX, bestY + 1, k, stride));
+            }
+            /*
+             * The center of a window starting at x covers pixels x to x + k - 1.
+             */
+            totalX += bestX + offsetX + (k - 1) / 2.0;
+            totalY += bestY + offsetY + (k - 1) / 2.0;
+            numberOfWindows += 1;
+        }
+
+        if (numberOfWindows == 0) {
+            result[0] = (width - 1) / 2.0;
+            result[1] = (height - 1) / 2.0;
+            return false;
+        }
+        result[0] = totalX / numberOfWindows;
+        result[1] = totalY / numberOfWindows;
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "integral";
+    }
+
+    /*
+     * The sum of the k by k window whose top left corner is (x, y).
+     */
+    private int windowSum(int x, int y, int k, int stride) {
+        int top = y * stride;
+        int bottom = (y + k) * stride;
+        return sums[bottom + x + k] - sums[bottom + x] - sums[top + x + k] + sums[top + x];
+    }
+
+    /*
+     * Given the values at -1, 0 and +1 around a minimum, returns the position of the vertex of the
+     * parabola through them, which lies between -0.5 and 0.5.
+     */
+    private static double parabolicOffset(double previous, double center, double next) {
+        double denominator = previous - 2 * center + next;
+        if (denominator <= 0) {
+            return 0;
+        }
+        return Math.max(-0.5, Math.min(0.5, 0.5 * (previous - next) / denominator));
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import android.graphics.PointF;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/*
+ * The LandmarkEyeDetector does not search the image at all. The face backend already tells us
+ * where the center of each eye is, so we simply place a box of a fixed fraction of the face size
+ * around each eye landmark. This is far cheaper than the CascadeClassifier, at the cost of
+ * trusting the backend's landmarks, which drift when the head is turned.
+ */
+public class LandmarkEyeDetector implements EyeDetector {
+
+    private static final double EYE_WIDTH_FRACTION = 0.25;
+    private static final double EYE_HEIGHT_FRACTION = 0.15;
+
+    @Override
+    public String getName() {
+        return "landmark";
+    }
+
+    @Override
+    public Rect[] detectEyes(Mat greyFace, DetectedFace face) {
+        PointF leftEye = face.getLeftEye();
+        PointF rightEye = face.getRightEye();
+        if (leftEye == null || rightEye == null) {
+            return new Rect[0];
+        }
+        int width = (int) Math.round(greyFace.cols() * EYE_WIDTH_FRACTION);
+        int height = (int) Math.round(greyFace.rows() * EYE_HEIGHT_FRACTION);
+        android.graphics.Rect faceBoundingBox = face.getBoundingBox();
+        Rect left = boxAround(leftEye, faceBoundingBox, width, height, greyFace);
+        Rect right = boxAround(rightEye, faceBoundingBox, width, height, greyFace);
+        if (left == null || right == null) {
+            return new Rect[0];
+        }
+        return new Rect[]{left, right};
+    }
+
+    /*
+     * Returns a width by height box centered on the landmark, moved into the coordinates of the
+     * face and clamped to it, or null if nothing of it is left inside the face. The face
+     * submatrix starts at the corner of the bounding box, or at the edge of the image if the box
+     * sticks out past it.
+     */
+    private static Rect boxAround(PointF landmark, android.graphics.Rect faceBoundingBox, int width, int height, Mat greyFace) {
+        int faceLeft = Math.max(0, faceBoundingBox.left);
+        int faceTop = Math.max(0, faceBoundingBox.top);
+        int left = Math.max(0, (int) Math.round(landmark.x - faceLeft - width / 2.0));
+        int top = Math.max(0, (int) Math.round(landmark.y - faceTop - height / 2.0));
+        int right = Math.min(greyFace.cols(), left + width);
+        int bottom = Math.min(greyFace.rows(), top + height);
+        if (right <= left || bottom <= top) {
+            return null;
+        }
+        return new Rect(left, top, right - left, bottom - top);
+    }
+
+}
@@ -51,24 +51,19 @@ import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.Task;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.face.Face;
-import com.google.mlkit.vision.face.FaceDetection;
-import com.google.mlkit.vision.face.FaceDetector;
-import com.google.mlkit.vision.face.FaceDetectorOptions;
 
 import org.opencv.android.OpenCVLoader;
+import org.opencv.core.MatTracker;
+import org.opencv.core.Mat;
 import org.opencv.objdetect.CascadeClassifier;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -77,9 +72,6 @@ import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
 
-    public static final int PIXEL_COUNT_HORIZONTAL = 1920;
-    public static final int PIXEL_COUNT_VERTICAL = 1080;
-
     public static int desiredNumberOfSubjects = 3;
 
     private final String MESSAGE_DESIRED_SUBJECTS_CHANGED = "The desired number of subjects has been changed to ";
@@ -99,9 +91,55 @@ public class MainActivity extends AppCompatActivity {
     private ProcessCameraProvider cameraProvider;
     private Executor cameraExecutor;
     private ImageCapture imageCapture;
+    private ImageAnalysis imageAnalysis;
+
+    /*
+     * The analysis resolution is chosen at runtime by resolutionSelector. The dimensions of the
+     * most recent frame, as seen by ML Kit after rotation, are kept so that bounding boxes can be
+     * mapped onto the screen regardless of which resolution the camera actually gave us.
+     */
+    private final ResolutionSelector resolutionSelector = new ResolutionSelector();
+    private int frameWidth;
+    private int frameHeight;
+
+    /*
+     * When useRegionOfInterest is true, frames after the first are cropped down to the area around
+     * the faces already found before they are given to ML Kit. See RegionOfInterestCropper. It is
+     * off by default until it has been validated on devices.
+     */
+    public static boolean useRegionOfInterest = false;
+    private final RegionOfInterestCropper regionOfInterestCropper = new RegionOfInterestCropper();
 
     public static CascadeClassifier eyeCascade;
 
+    /*
+     * When trackNativeMats is true, every OpenCV Mat is tracked by MatTracker, which frees the
+     * native memory of Mats that are never closed and reports where they were created, so we can
+     * check that long capture sessions do not leak.
+     */
+    public static boolean trackNativeMats = false;
+
+    /*
+     * Faces are found by a FaceBackend. ML Kit is used unless useOpenCVFaceBackend is true and the
+     * YuNet model has been placed in the app's files directory, in which case OpenCV's
+     * FaceDetectorYN is used instead. The time each frame spends waiting for the backend is
+     * recorded so that the two can be compared.
+     */
+    public static boolean useOpenCVFaceBackend = false;
+    private static final String FACE_DETECTION_MODEL = "face_detection_yunet_2021dec.onnx";
+    private static final String EYE_STATE_MODEL = "eye_state.onnx";
+    private static final String GAZE_CLASSIFIER_MODEL = "gaze_classifier.xml";
+
+    /*
+     * When gazeSessionLabel is 0 or 1, the features of every face are recorded to a new session
+     * file in the app's files directory with that label, for training a GazeClassifier. Use 1 when
+     * every subject will be looking toward the camera and 0 when every subject will be looking
+     * away. See GazeSessionRecorder.
+     */
+    public static int gazeSessionLabel = -1;
+    private FaceBackend mlKitFaceBackend;
+    private FaceBackend openCVFaceBackend;
+
 
     /*
      * Integers used for analyzing test results.
@@ -109,6 +147,7 @@ public class MainActivity extends AppCompatActivity {
     private int totalNumberOfImagesAnalyzed = 0;
     private int totalNumberOfFacesDetected = 0;
     private int numberOfTimesEachGazeWasCaptured = 0;
+    private long totalTimeSpentDetectingFaces = 0;
 
 
 
@@ -128,7 +167,12 @@ public class MainActivity extends AppCompatActivity {
         startCamera();
         setOnClickListeners();
         OpenCVLoader.initDebug();
+        if (trackNativeMats) {
+            MatTracker.enable(true);
+        }
         openResourceFile();
+        openEyeStateModel();
+        openGazeClassifier();
     }
 
 
@@ -211,13 +255,14 @@ public class MainActivity extends AppCompatActivity {
     private void bindAnalysisUseCase() {
         /*
          * This method implements the ImageAnalysis use case of CameraX which allows us to analyze
-         * each frame the camera produces in real time. We are currently capturing frames at 720p,
-         * though we may wish to choose a lower resolution in the future to enhance processing
-         * speed. We also set the ImageAnalysis object to analyze only the latest frame as we only
-         * care about what is happening at the singular, latest instance.
+         * each frame the camera produces in real time. The resolution we capture frames at is
+         * chosen by resolutionSelector, which starts low and only asks for more pixels when faces
+         * become too small to find pupils in. We also set the ImageAnalysis object to analyze only
+         * the latest frame as we only care about what is happening at the singular, latest
+         * instance.
          */
-        ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
-                .setTargetResolution(new Size(PIXEL_COUNT_HORIZONTAL, PIXEL_COUNT_VERTICAL))
+        imageAnalysis = new ImageAnalysis.Builder()
+                .setTargetResolution(new Size(resolutionSelector.getTargetWidth(), resolutionSelector.getTargetHeight()))
                 .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
                 .build();
         /*
@@ -228,6 +273,7 @@ public class MainActivity extends AppCompatActivity {
          */
         imageAnalysis.setAnalyzer(ContextCompat.getMainExecutor(this), imageProxy -> {
             totalNumberOfImagesAnalyzed += 1;
+            long frameStartTime = System.nanoTime();
 
             /*
              * The ImageProxy object given as an argument to analyze is the image the camera is
@@ -247,37 +293,71 @@ public class MainActivity extends AppCompatActivity {
                  * InputImage can use various image objects, but we are using the Image object
                  * we got from the camera. When using an Image object, it is required to also
                  * give an integer representing the rotation of the camera. We can get this
-                 * integer from the ImageProxy object in memory.
+                 * integer from the ImageProxy object in memory. If we already know where the
+                 * faces are, we give ML Kit only the region around them instead.
                  */
-                InputImage image = InputImage.fromMediaImage(mediaImage, imageProxy.getImageInfo().getRotationDegrees());
+                int rotationDegrees = imageProxy.getImageInfo().getRotationDegrees();
+                boolean isCropped = useRegionOfInterest && regionOfInterestCropper.shouldCrop(mediaImage);
+                InputImage image;
+                if (isCropped) {
+                    image = regionOfInterestCropper.crop(mediaImage);
+                } else {
+                    image = InputImage.fromMediaImage(mediaImage, rotationDegrees);
+                }
                 /*
-                 * Now we will set the options for FaceDetector. The following options are given
-                 * in the Android Developer Docs and optimize FaceDetector for accuracy. These
-                 * options can be changed to optimize for performance if need be.
+                 * ML Kit reports faces in the coordinates of the rotated image, so when the
+                 * frame is rotated by a quarter turn its width and height are swapped.
                  */
-                FaceDetectorOptions options = new FaceDetectorOptions.Builder()
-                        .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
-                        .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
-                        .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
-                        .build();
+                if (rotationDegrees == 90 || rotationDegrees == 270) {
+                    frameWidth = imageProxy.getHeight();
+                    frameHeight = imageProxy.getWidth();
+                } else {
+                    frameWidth = imageProxy.getWidth();
+                    frameHeight = imageProxy.getHeight();
+                }
                 /*
-                 * We're ready to instantiate the FaceDetector.
+                 * The backend also needs the grey image. It is the matching crop when the frame
+                 * was cropped. Either way it is still in the orientation of the sensor, so the
+                 * backend hands back the grey image turned to match the faces it found, and
+                 * GazeDetector uses that one afterwards.
                  */
-                FaceDetector faceDetector = FaceDetection.getClient(options);
+                Mat greyImage;
+                if (isCropped) {
+                    greyImage = regionOfInterestCropper.getGreyCrop();
+                } else {
+                    greyImage = GazeDetector.imageToGreyMatrix(mediaImage);
+                }
                 /*
-                 * The process method of FaceDetector returns a Task and a List of faces called
-                 * Face. Task allows us to add the OnSuccessListener, OnFailureListener, and
-                 * OnCompleteListener. It is important to note that the FaceDetector has not
-                 * failed if no faces are detected. Failure only refers to encountering an
-                 * error. The List faces can be used to conduct further analysis - particularly,
-                 * gaze detection.
+                 * The face backend finds the faces and their landmarks. It is important to note
+                 * that the backend has not failed if no faces are detected. Failure only refers
+                 * to encountering an error. The List faces can be used to conduct further
+                 * analysis - particularly, gaze detection.
                  */
-                Task<List<Face>> result = faceDetector.process(image).addOnSuccessListener(new OnSuccessListener<List<Face>>() {
+                FaceBackend backend = getFaceBackend();
+                backend.process(image, greyImage, rotationDegrees, new FaceBackend.Callback() {
                     @Override
-                    public void onSuccess(List<Face> faces) {
+                    public void onSuccess(List<DetectedFace> faces, Mat faceImage) {
+
+                        totalTimeSpentDetectingFaces += System.nanoTime() - frameStartTime;
 
                         totalNumberOfFacesDetected += faces.size();
 
+                        /*
+                         * If ML Kit was only given a crop of the frame, the bounding boxes it
+                         * found are relative to that crop, so we move them back into the
+                         * coordinates of the full frame first.
+                         */
+                        List<Rect> frameBoundingBoxes = new ArrayList<Rect>(faces.size());
+                        for (int i = 0; i < faces.size(); i++) {
+                            Rect boundingBox = faces.get(i).getBoundingBox();
+                            if (isCropped) {
+                                boundingBox = regionOfInterestCropper.toFrameCoordinates(boundingBox);
+                            }
+                            frameBoundingBoxes.add(boundingBox);
+                        }
+                        if (useRegionOfInterest) {
+                            regionOfInterestCropper.updateRegion(frameBoundingBoxes, rotationDegrees, mediaImage.getWidth(), mediaImage.getHeight());
+                        }
                         /*
                          * The first thing we'll do is draw each of the face bounding boxes.
                          */
@@ -288,7 +368,7 @@ public class MainActivity extends AppCompatActivity {
                              * correctBoundingBox method on it first. This flips it along the
                              * x-axis.
                              */
-                            boundingBoxes[i] = correctBoundingBox(faces.get(i).getBoundingBox());
+                            boundingBoxes[i] = correctBoundingBox(frameBoundingBoxes.get(i));
                         }
                         drawRectangles(boundingBoxes);
                         /*
@@ -303,9 +383,11 @@ public class MainActivity extends AppCompatActivity {
                          * Now, we call the detectGazes method of GazeDetector to
                          * determine the number of faces which are looking toward the
                          * camera and update the value of
-                         * numberOfFacesLookingTowardCamera.
+                         * numberOfFacesLookingTowardCamera. The face coordinates match
+                         * faceImage, which is the upright grey crop rather than the full image
+                         * when the frame was cropped.
                          */
-                        numberOfGazesDetected = GazeDetector.detectGazesWithDistances(faces, mediaImage);
+                        numberOfGazesDetected = GazeDetector.detectGazesWithDistances(faces, faceImage);
                         /*
                          * We now verify if number of subjects looking toward the
                          * camera is equivalent to the number of faces detected by
@@ -330,31 +412,45 @@ public class MainActivity extends AppCompatActivity {
                          */
                         updateFaceCounter(numberOfFacesDetected);
                         updateGazeCounter(numberOfGazesDetected);
+                        /*
+                         * Lastly, we let resolutionSelector know how small the smallest face was
+                         * and how long this frame took. If it decides a different resolution
+                         * is needed, we rebind the analysis use case with it.
+                         */
+                        int smallestFaceWidth = 0;
+                        for (int i = 0; i < faces.size(); i++) {
+                            int faceWidth = frameBoundingBoxes.get(i).width();
+                            if (smallestFaceWidth == 0 || faceWidth < smallestFaceWidth) {
+                                smallestFaceWidth = faceWidth;
+                            }
+                        }
+                        long frameTime = System.nanoTime() - frameStartTime;
+                        if (resolutionSelector.update(smallestFaceWidth, Math.max(frameWidth, frameHeight), frameTime)) {
+                            rebindAnalysisUseCase();
+                        }
                     }
-                })
-                .addOnFailureListener(new OnFailureListener() {
+
                     @Override
                     public void onFailure(@NonNull Exception e) {
                         /*
-                         * We are not equipped to handle any errors FaceDetector
-                         * encounters, but we can update the UI to let the user know
-                         * that their face is definitely undetected.
+                         * We are not equipped to handle any errors the backend encounters, but
+                         * we can update the UI to let the user know that their face is
+                         * definitely undetected.
                          */
                         updateFaceCounter(0);
                         updateGazeCounter(0);
                     }
-                })
-                .addOnCompleteListener(new OnCompleteListener<List<Face>>() {
+
                     @Override
-                    public void onComplete(@NonNull Task<List<Face>> task) {
+                    public void onComplete() {
                         /*
                          * The ImageProxy in memory must be closed because we have
                          * configured the camera to keep only the latest frame. If we
                          * failed to close the ImageProxy, we would not be able to
                          * analyze any more frames past the one which was not closed
                          * (which would always be the first in this case). Note that the
-                         * onComplete method will run regardless of whether
-                         * faceDetector.process succeeds or fails.
+                         * onComplete method will run regardless of whether the backend
+                         * succeeds or fails.
                          */
                         imageProxy.close();
                     }
@@ -365,7 +461,31 @@ public class MainActivity extends AppCompatActivity {
             System.out.println("Total number of eyes detected: " + GazeDetector.totalNumberOfEyesDetected);
             System.out.println("Total number of pupils detected: " + GazeDetector.totalNumberOfPupilsDetected);
             System.out.println("Total number of gazes detected: " + GazeDetector.totalNumberOfGazesDetected);
+            System.out.println("Total time spent searching for eyes (ms): " + GazeDetector.totalTimeSpentSearchingForEyes / 1000000);
+            System.out.println("Total time spent locating pupils (ms): " + GazeDetector.totalTimeSpentLocatingPupils / 1000000);
+            if (GazeDetector.totalNumberOfEyesEnhanced > 0) {
+                System.out.println("Average time spent enhancing contrast per eye (us): " + GazeDetector.totalTimeSpentEnhancingContrast / 1000 / GazeDetector.totalNumberOfEyesEnhanced);
+            }
             System.out.println("Number of times successful: " + numberOfTimesEachGazeWasCaptured);
+            System.out.println("Average time spent detecting faces with " + getFaceBackend().getName() + " (ms): " + totalTimeSpentDetectingFaces / 1000000 / totalNumberOfImagesAnalyzed);
+            System.out.println("Average time per frame at each resolution: " + resolutionSelector.getFrameTimeSummary());
+            System.out.println("Faces rejected at each stage: " + GazeDetector.rejectionCascade.getSummary());
+            System.out.println("Eye detectors: " + GazeDetector.getEyeDetectors().getSummary());
+            if (GazeDetector.totalNumberOfGazesClassified > 0) {
+                System.out.println("Average time spent classifying gazes (ns): " + GazeDetector.totalTimeSpentClassifyingGazes / GazeDetector.totalNumberOfGazesClassified);
+            }
+            if (GazeDetector.sessionRecorder != null) {
+                System.out.println("Number of faces recorded: " + GazeDetector.sessionRecorder.getNumberOfFacesRecorded());
+            }
+            if (GazeDetector.eyeStateBatcher != null) {
+                System.out.println("Eye state network: " + GazeDetector.eyeStateBatcher.getSummary());
+            }
+            System.out.println("Pupil locators: " + GazeDetector.getPupilLocators().getSummary());
+            System.out.println("Mat pool: " + MatPool.get().getSummary());
+            System.out.println("Image views: " + GazeDetector.imageMats.getSummary());
+            if (MatTracker.isEnabled()) {
+                System.out.println("Native Mats: " + MatTracker.getSummary());
+            }
         });
         /*
          * With imageAnalysis initialized, it can be bound to the hardware (cameraProvider) as
@@ -374,6 +494,16 @@ public class MainActivity extends AppCompatActivity {
         cameraProvider.bindToLifecycle(this, cameraSelector, imageAnalysis);
     }
 
+    private void rebindAnalysisUseCase() {
+        /*
+         * The target resolution of an ImageAnalysis object cannot be changed once it is built, so
+         * we unbind the current one and bind a new one in its place. The preview and capture use
+         * cases are left untouched.
+         */
+        cameraProvider.unbind(imageAnalysis);
+        bindAnalysisUseCase();
+    }
+
     /*
      * The next set of methods are responsible for functionality pertaining to the UI. This includes
      * updating the text on screen to adapt to changes in variables as well as setting the behavior
@@ -443,29 +573,26 @@ public class MainActivity extends AppCompatActivity {
      * This method flips bounding boxes on the y-axis. This is necessary because the various
      * libraries we are using to analyze the image have their left and right sides opposite the
      * user of the application. This flips the bounding box so that it can be displayed in the
-     * proper location on the screen.
+     * proper location on the screen. Since the analysis resolution can change at runtime, the box
+     * is flipped about the center of the frame it was found in and then scaled from frame
+     * coordinates to screen coordinates.
      *
      * Contributed by Brayden.
      */
     private Rect correctBoundingBox(Rect boundingBox) {
+        /*
+         * Flipping about the center of the frame maps x to frameWidth - x, which swaps the left
+         * and right sides of the box.
+         */
+        int left = frameWidth - boundingBox.right;
+        int right = frameWidth - boundingBox.left;
         /*
          * A Rect object takes in four arguments: left, top, right, and bottom.
          */
-        int left;
-        if (boundingBox.left < PIXEL_COUNT_HORIZONTAL / 2) {
-            left = (boundingBox.left + 2 * Math.abs(boundingBox.left - PIXEL_COUNT_HORIZONTAL / 2));
-        } else {
-            left = (boundingBox.left - 2 * Math.abs(boundingBox.left - PIXEL_COUNT_HORIZONTAL / 2));
-        }
-
-        int right;
-        if (boundingBox.right < PIXEL_COUNT_HORIZONTAL / 2) {
-            right = (boundingBox.right + 2 * Math.abs(boundingBox.right - PIXEL_COUNT_HORIZONTAL / 2));
-        } else {
-            right = (boundingBox.right - 2 * Math.abs(boundingBox.right - PIXEL_COUNT_HORIZONTAL / 2));
-        }
-
-        return new Rect(left, boundingBox.top, right, boundingBox.bottom);
+        float horizontalScale = (float) getScreenWidth() / frameWidth;
+        float verticalScale = (float) getScreenHeight() / frameHeight;
+        return new Rect(Math.round(left * horizontalScale), Math.round(boundingBox.top * verticalScale),
+                Math.round(right * horizontalScale), Math.round(boundingBox.bottom * verticalScale));
 
     }
 
@@ -569,6 +696,73 @@ public class MainActivity extends AppCompatActivity {
         selectionMenu.show();
     }
 
+    /*
+     * Returns the backend to find faces with, creating it the first time it is needed. The ML Kit
+     * backend is used whenever the OpenCV one is turned off or its model is missing.
+     */
+    private FaceBackend getFaceBackend() {
+        if (useOpenCVFaceBackend && openCVFaceBackend == null) {
+            File modelFile = new File(getFilesDir(), FACE_DETECTION_MODEL);
+            if (modelFile.exists()) {
+                openCVFaceBackend = new YuNetFaceBackend(modelFile.getAbsolutePath());
+                Log.i(TAG, "Loaded face detection model from " + modelFile.getAbsolutePath());
+            } else {
+                Log.e(TAG, "Face detection model not found at " + modelFile.getAbsolutePath() + ", using ML Kit");
+                useOpenCVFaceBackend = false;
+            }
+        }
+        if (useOpenCVFaceBackend) {
+            return openCVFaceBackend;
+        }
+        if (mlKitFaceBackend == null) {
+            mlKitFaceBackend = new MlKitFaceBackend();
+        }
+        return mlKitFaceBackend;
+    }
+
+    /*
+     * Loads the eye state network used by GazeDetector for backends that cannot tell whether the
+     * eyes are open, if one has been placed in the app's files directory. See EyeStateBatcher.
+     */
+    private void openEyeStateModel() {
+        File modelFile = new File(getFilesDir(), EYE_STATE_MODEL);
+        if (modelFile.exists()) {
+            GazeDetector.eyeStateBatcher = new EyeStateBatcher(modelFile.getAbsolutePath());
+            Log.i(TAG, "Loaded eye state model from " + modelFile.getAbsolutePath());
+        }
+    }
+
+    /*
+     * Loads the GazeClassifier trained by GazeClassifierTrainer, if one has been placed in the
+     * app's files directory, and starts recording a session if gazeSessionLabel asks for one.
+     */
+    private void openGazeClassifier() {
+        File modelFile = new File(getFilesDir(), GAZE_CLASSIFIER_MODEL);
+        if (modelFile.exists()) {
+            GazeDetector.gazeClassifier = GazeClassifier.load(modelFile.getAbsolutePath());
+            Log.i(TAG, "Loaded gaze classifier from " + modelFile.getAbsolutePath());
+        }
+        if (gazeSessionLabel == 0 || gazeSessionLabel == 1) {
+            File sessionFile = new File(getFilesDir(), "gaze_session_" + gazeSessionLabel + "_" + System.currentTimeMillis() + ".csv");
+            try {
+                GazeDetector.sessionRecorder = new GazeSessionRecorder(sessionFile, gazeSessionLabel);
+                Log.i(TAG, "Recording gaze session to " + sessionFile.getAbsolutePath());
+            } catch (IOException e) {
+                e.printStackTrace();
+                Log.e(TAG, "Failed to start recording gaze session. Exception thrown: " + e);
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (GazeDetector.sessionRecorder != null) {
+            GazeDetector.sessionRecorder.close();
+            GazeDetector.sessionRecorder = null;
+        }
+    }
+
     private void openResourceFile() {
         /*
          * Contributed by Mathew, using code found here:
@@ -0,0 +1,171 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+
+/*
+ * The MatPool hands out scratch Mats by their number of rows, columns and type. Our per-frame work
+ * needs many small Mats whose sizes depend on the faces and eyes in the frame: resized eyes,
+ * thresholded eyes, downscaled faces and so on. Keeping one Mat per use and writing into it with
+ * whatever size the next eye needs makes OpenCV free and allocate native memory every time the
+ * size changes, which is nearly every eye. Instead, a Mat is acquired with the size it must have,
+ * used, and released back into the pool, where it waits for the next request of the same size.
+ * Since faces move slowly, the same handful of sizes come back frame after frame, and once the
+ * pool has warmed up a frame allocates no native memory at all.
+ *
+ * Each thread has its own pool, so no locking is needed. The pools are small lists of buckets,
+ * one per size, kept in order of most recent use and searched linearly from the front, so the
+ * sizes of the current frame are found first. Crop sizes drift by a pixel or so from frame to
+ * frame, so sizes that are no longer used must not be kept forever. A pool never holds more than
+ * MAXIMUM_POOLED_BYTES of Mats: when a release takes it over, Mats are closed from the least
+ * recently used buckets until it fits again, which frees their native memory right away and
+ * makes room for the sizes of the current frames. Buckets left empty at the back of the list are
+ * removed once there are more than MAXIMUM_BUCKETS of them. The number of hits, misses and Mats
+ * closed are recorded for analyzing test results.
+ */
+public class MatPool {
+
+    private static final long MAXIMUM_POOLED_BYTES = 16L * 1024 * 1024;
+    private static final int MAXIMUM_BUCKETS = 32;
+
+    private static final ThreadLocal<MatPool> pools = new ThreadLocal<MatPool>() {
+        @Override
+        protected MatPool initialValue() {
+            return new MatPool();
+        }
+    };
+
+    /*
+     * Returns the pool of the calling thread.
+     */
+    public static MatPool get() {
+        return pools.get();
+    }
+
+    private static class Bucket {
+        final int rows;
+        final int cols;
+        final int type;
+        final ArrayList<Mat> mats = new ArrayList<Mat>();
+
+        Bucket(int rows, int cols, int type) {
+            this.rows = rows;
+            this.cols = cols;
+            this.type = type;
+        }
+    }
+
+    private final ArrayList<Bucket> buckets = new ArrayList<Bucket>();
+    private long pooledBytes = 0;
+    private int hits = 0;
+    private int misses = 0;
+    private int evictions = 0;
+
+    /*
+     * Returns the bucket for the given size and type, moved to the front of the list as the most
+     * recently used, or null if there is none and create is false.
+     */
+    private Bucket findBucket(int rows, int cols, int type, boolean create) {
+        for (int i = 0; i < buckets.size(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.rows == rows && bucket.cols == cols && bucket.type == type) {
+                if (i > 0) {
+                    buckets.remove(i);
+                    buckets.add(0, bucket);
+                }
+                return bucket;
+            }
+        }
+        if (!create) {
+            return null;
+        }
+        Bucket bucket = new Bucket(rows, cols, type);
+        buckets.add(0, bucket);
+        return bucket;
+    }
+
+    /*
+     * Closes Mats from the least recently used buckets until the pool is within its budget, and
+     * removes the empty buckets at the back of the list while there are too many.
+     */
+    private void trim() {
+        int last = buckets.size() - 1;
+        while (last >= 0 && (pooledBytes > MAXIMUM_POOLED_BYTES || buckets.size() > MAXIMUM_BUCKETS)) {
+            Bucket bucket = buckets.get(last);
+            if (pooledBytes > MAXIMUM_POOLED_BYTES && !bucket.mats.isEmpty()) {
+                bucket.mats.remove(bucket.mats.size() - 1).close();
+                pooledBytes -= bytesOf(bucket.rows, bucket.cols, bucket.type);
+                evictions += 1;
+            }
+            if (bucket.mats.isEmpty()) {
+                buckets.remove(last);
+                last -= 1;
+            } else if (pooledBytes <= MAXIMUM_POOLED_BYTES) {
+                /*
+                 * The pool fits again, and the bucket at the back still holds Mats, so there are
+                 * no more empty buckets to remove behind it.
+                 */
+                last -= 1;
+            }
+        }
+    }
+
+    private static long bytesOf(int rows, int cols, int type) {
+        return (long) rows * cols * CvType.ELEM_SIZE(type);
+    }
+
+    /*
+     * Returns a Mat with the given number of rows, columns and type. Its contents are whatever
+     * was last written into it.
+     */
+    public Mat acquire(int rows, int cols, int type) {
+        Bucket bucket = findBucket(rows, cols, type, false);
+        if (bucket != null && !bucket.mats.isEmpty()) {
+            hits += 1;
+            pooledBytes -= bytesOf(rows, cols, type);
+            return bucket.mats.remove(bucket.mats.size() - 1);
+        }
+        misses += 1;
+        return new Mat(rows, cols, type);
+    }
+
+    /*
+     * Gives a Mat back to the pool. It is filed under the size and type it has now, since the
+     * OpenCV functions that wrote into it may have changed them. The Mat must not be used by the
+     * caller afterwards.
+     */
+    public void release(Mat mat) {
+        int rows = mat.rows();
+        int cols = mat.cols();
+        int type = mat.type();
+        long bytes = bytesOf(rows, cols, type);
+        if (bytes == 0 || bytes > MAXIMUM_POOLED_BYTES || mat.isSubmatrix()) {
+            evictions += 1;
+            mat.close();
+            return;
+        }
+        findBucket(rows, cols, type, true).mats.add(mat);
+        pooledBytes += bytes;
+        trim();
+    }
+
+    public String getSummary() {
+        int requests = hits + misses;
+        return (requests == 0 ? 0 : 100 * hits / requests) + "% hits (" + hits + " hits, " + misses + " misses, "
+                + evictions + " closed), " + buckets.size() + " sizes, " + pooledBytes / 1024 + " KB pooled";
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import android.graphics.PointF;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
+import com.google.mlkit.vision.face.FaceDetection;
+import com.google.mlkit.vision.face.FaceDetector;
+import com.google.mlkit.vision.face.FaceDetectorOptions;
+import com.google.mlkit.vision.face.FaceLandmark;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The MlKitFaceBackend finds faces with the ML Kit FaceDetector. ML Kit processes the image on its
+ * own threads and answers through a Task, so the callback is called after process returns.
+ */
+public class MlKitFaceBackend implements FaceBackend {
+
+    private final FaceDetector faceDetector;
+    private final Mat uprightImage = new Mat();
+
+    public MlKitFaceBackend() {
+        /*
+         * The following options are given in the Android Developer Docs and optimize FaceDetector
+         * for accuracy. These options can be changed to optimize for performance if need be. The
+         * FaceDetector is created once and used for every frame.
+         */
+        FaceDetectorOptions options = new FaceDetectorOptions.Builder()
+                .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_ACCURATE)
+                .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_ALL)
+                .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_ALL)
+                .build();
+        faceDetector = FaceDetection.getClient(options);
+    }
+
+    @Override
+    public String getName() {
+        return "ML Kit";
+    }
+
+    @Override
+    public void process(InputImage image, Mat greyImage, int rotationDegrees, Callback callback) {
+        /*
+         * The process method of FaceDetector returns a Task and a List of faces called Face. Task
+         * allows us to add the OnSuccessListener, OnFailureListener, and OnCompleteListener. It is
+         * important to note that the FaceDetector has not failed if no faces are detected. Failure
+         * only refers to encountering an error.
+         */
+        faceDetector.process(image).addOnSuccessListener(new OnSuccessListener<List<Face>>() {
+            @Override
+            public void onSuccess(List<Face> faces) {
+                List<DetectedFace> detectedFaces = new ArrayList<DetectedFace>(faces.size());
+                for (int i = 0; i < faces.size(); i++) {
+                    detectedFaces.add(toDetectedFace(faces.get(i)));
+                }
+                /*
+                 * ML Kit turned the image upright before searching it, so the grey image has to
+                 * be turned the same way for the faces to line up with it. When there are no
+                 * faces nothing will be looked up in it, so the rotation is skipped.
+                 */
+                Mat faceImage = greyImage;
+                if (!faces.isEmpty()) {
+                    faceImage = GazeDetector.rotateUpright(greyImage, rotationDegrees, uprightImage);
+                }
+                callback.onSuccess(detectedFaces, faceImage);
+            }
+        })
+        .addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(@NonNull Exception e) {
+                callback.onFailure(e);
+            }
+        })
+        .addOnCompleteListener(new OnCompleteListener<List<Face>>() {
+            @Override
+            public void onComplete(@NonNull Task<List<Face>> task) {
+                callback.onComplete();
+            }
+        });
+    }
+
+    private static DetectedFace toDetectedFace(Face face) {
+        return new DetectedFace(face.getBoundingBox(),
+                getPosition(face, FaceLandmark.LEFT_EYE),
+                getPosition(face, FaceLandmark.RIGHT_EYE),
+                getPosition(face, FaceLandmark.LEFT_EAR),
+                getPosition(face, FaceLandmark.RIGHT_EAR),
+                getPosition(face, FaceLandmark.NOSE_BASE),
+                true, face.getLeftEyeOpenProbability(), face.getRightEyeOpenProbability(),
+                face.getHeadEulerAngleX(), face.getHeadEulerAngleY(), face.getHeadEulerAngleZ());
+    }
+
+    /*
+     * Returns the position of the given landmark, or null if ML Kit did not find it.
+     */
+    private static PointF getPosition(Face face, int landmarkType) {
+        FaceLandmark landmark = face.getLandmark(landmarkType);
+        if (landmark == null) {
+            return null;
+        }
+        return landmark.getPosition();
+    }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.Mat;
+
+/*
+ * A PupilLocator finds the center of the pupil within the image of a single eye. Like EyeDetector,
+ * there are several implementations, and GazeDetector picks between them at runtime with a
+ * StrategyRegistry.
+ */
+public interface PupilLocator {
+
+    /*
+     * A short name used when reporting how each strategy performs.
+     */
+    String getName();
+
+    /*
+     * Locates the pupil in the given grey eye image and writes its coordinates, relative to the
+     * top left corner of the eye, into result[0] and result[1]. Returns false if no pupil could be
+     * found, in which case result is left alone.
+     */
+    boolean locatePupil(Mat greyEye, double[] result);
+
+}
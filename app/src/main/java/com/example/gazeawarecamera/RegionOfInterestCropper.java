@@ -0,0 +1,286 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import android.graphics.Rect;
+import android.media.Image;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import org.opencv.android.ImageMats;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/*
+ * Most of every frame is background, yet ML Kit searches all of it for faces. When the subjects of a
+ * group photo are standing still, the faces found in one frame are almost exactly where they will
+ * be in the next. The RegionOfInterestCropper takes advantage of this by remembering a padded box
+ * around the faces from the previous frame and cropping each new frame down to it before it is
+ * given to ML Kit. Every FULL_SCAN_INTERVAL frames, and whenever no faces are found, the full frame
+ * is searched again so that people who walk into the picture are not missed.
+ *
+ * There are two coordinate systems to keep in mind here. The camera sensor delivers the Image in
+ * its own orientation (usually landscape), but ML Kit reports faces in the coordinates of the image
+ * after it has been rotated upright. The region is remembered in sensor coordinates since that is
+ * what we crop, and the faces ML Kit finds in the crop are moved back into upright frame
+ * coordinates with toFrameCoordinates.
+ */
+public class RegionOfInterestCropper {
+
+    private static final int FULL_SCAN_INTERVAL = 30;
+    private static final double PADDING = 0.5;
+
+    /*
+     * The crop is written as NV21 (all of the Y values followed by interleaved V and U values) into
+     * a direct ByteBuffer that is kept between frames and only grown when a larger crop is needed.
+     * It is safe to reuse because the analyzer only keeps the latest frame, and the next frame is
+     * not delivered until ML Kit has finished with this one and the ImageProxy has been closed.
+     */
+    private ByteBuffer buffer;
+    private Mat greyCrop;
+
+    private boolean hasRegion = false;
+    private int framesSinceFullScan = 0;
+    private boolean lastFrameWasCropped = false;
+    private int cropLeft;
+    private int cropTop;
+    private int cropWidth;
+    private int cropHeight;
+    private int rotationDegrees;
+    private int imageWidth;
+    private int imageHeight;
+
+    /*
+     * Returns true if the given frame should be cropped, or false if it is time for a full scan.
+     * A frame of a different size than the one the region was found in (for example, after the
+     * analysis resolution has changed) is always scanned in full.
+     */
+    public boolean shouldCrop(Image image) {
+        return shouldCrop() && image.getWidth() == imageWidth && image.getHeight() == imageHeight;
+    }
+
+    private boolean shouldCrop() {
+        return hasRegion && framesSinceFullScan < FULL_SCAN_INTERVAL;
+    }
+
+    /*
+     * Copies the region of interest out of the Y, U and V planes of the image and wraps it in an
+     * InputImage for ML Kit. shouldCrop must have returned true for the image before this is called.
+     */
+    public InputImage crop(Image image) {
+        framesSinceFullScan += 1;
+        lastFrameWasCropped = true;
+        int frameSize = cropWidth * cropHeight;
+        int bufferSize = frameSize + frameSize / 2;
+        if (buffer == null || buffer.capacity() < bufferSize) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        Image.Plane[] planes = image.getPlanes();
+        /*
+         * The Y plane always has a pixel stride of 1, so each row of the crop can be copied in
+         * one bulk get. We use duplicates of the plane buffers so that the positions of the
+         * originals, which ML Kit or OpenCV might read later, are left alone.
+         */
+        ByteBuffer yPlane = planes[0].getBuffer().duplicate();
+        int yRowStride = planes[0].getRowStride();
+        ByteBuffer destination = buffer.duplicate();
+        destination.clear();
+        for (int row = 0; row < cropHeight; row++) {
+            yPlane.limit(yPlane.capacity());
+            yPlane.position((cropTop + row) * yRowStride + cropLeft);
+            yPlane.limit(yPlane.position() + cropWidth);
+            destination.put(yPlane);
+        }
+        /*
+         * The U and V planes are subsampled by two in each direction. When the camera already
+         * stores them interleaved as NV21, with every V value followed by its U value, the V plane
+         * holds exactly the rows we need, and each can again be copied in one bulk get. The V
+         * plane ends at the last V value, so the U value that follows it is read from the U plane.
+         */
+        ByteBuffer uPlane = planes[1].getBuffer();
+        ByteBuffer vPlane = planes[2].getBuffer();
+        int uRowStride = planes[1].getRowStride();
+        int uPixelStride = planes[1].getPixelStride();
+        int vRowStride = planes[2].getRowStride();
+        int vPixelStride = planes[2].getPixelStride();
+        if (GazeDetector.imageMats.layout(image) == ImageMats.LAYOUT_NV21) {
+            ByteBuffer vuPlane = vPlane.duplicate();
+            for (int row = 0; row < cropHeight / 2; row++) {
+                int vRowStart = (cropTop / 2 + row) * vRowStride + cropLeft;
+                vuPlane.limit(vuPlane.capacity());
+                vuPlane.position(vRowStart);
+                vuPlane.limit(vRowStart + cropWidth - 1);
+                destination.put(vuPlane);
+                destination.put(uPlane.get((cropTop / 2 + row) * uRowStride + cropLeft + cropWidth - 2));
+            }
+        } else {
+            /*
+             * Otherwise the pixel strides vary between devices, so we read the planes value by
+             * value, each with its own strides. There are a quarter as many of these as there are
+             * Y values, so this loop is cheap compared to the one above.
+             */
+            for (int row = 0; row < cropHeight / 2; row++) {
+                int uRowStart = (cropTop / 2 + row) * uRowStride + (cropLeft / 2) * uPixelStride;
+                int vRowStart = (cropTop / 2 + row) * vRowStride + (cropLeft / 2) * vPixelStride;
+                for (int column = 0; column < cropWidth / 2; column++) {
+                    destination.put(vPlane.get(vRowStart + column * vPixelStride));
+                    destination.put(uPlane.get(uRowStart + column * uPixelStride));
+                }
+            }
+        }
+
+        return InputImage.fromByteBuffer(buffer, cropWidth, cropHeight, rotationDegrees, InputImage.IMAGE_FORMAT_NV21);
+    }
+
+    /*
+     * Returns the grey (Y) part of the last crop as a Mat. The Mat shares its memory with the
+     * buffer, so nothing is copied. Like the Image it was cut from, the crop is in the orientation
+     * of the sensor, while ML Kit reports the faces it finds in the crop after turning it upright.
+     * It is handed to the face backend along with the rotation, and the backend gives back the
+     * crop turned upright to match the faces.
+     */
+    public Mat getGreyCrop() {
+        if (greyCrop == null || greyCrop.rows() != cropHeight || greyCrop.cols() != cropWidth) {
+            /*
+             * The old header is closed right away rather than left to the finalizer, since the
+             * size of the crop changes whenever the faces move.
+             */
+            if (greyCrop != null) {
+                greyCrop.close();
+            }
+            greyCrop = new Mat(cropHeight, cropWidth, CvType.CV_8UC1, buffer);
+        }
+        return greyCrop;
+    }
+
+    /*
+     * Moves a box found by ML Kit in the last crop into the upright coordinates of the full frame.
+     * Rotation does not change the size of the crop, only where its corner ends up, so this is
+     * just an offset that depends on the rotation.
+     */
+    public Rect toFrameCoordinates(Rect boundingBox) {
+        int offsetX;
+        int offsetY;
+        switch (rotationDegrees) {
+            case 90:
+                offsetX = imageHeight - cropTop - cropHeight;
+                offsetY = cropLeft;
+                break;
+            case 180:
+                offsetX = imageWidth - cropLeft - cropWidth;
+                offsetY = imageHeight - cropTop - cropHeight;
+                break;
+            case 270:
+                offsetX = cropTop;
+                offsetY = imageWidth - cropLeft - cropWidth;
+                break;
+            default:
+                offsetX = cropLeft;
+                offsetY = cropTop;
+                break;
+        }
+        return new Rect(boundingBox.left + offsetX, boundingBox.top + offsetY, boundingBox.right + offsetX, boundingBox.bottom + offsetY);
+    }
+
+    /*
+     * Remembers a padded box around all of the faces, given in upright frame coordinates, as the
+     * region to crop the next frame to. If there are no faces, the next frame is a full scan. The
+     * width and height are those of the Image as delivered by the sensor.
+     */
+    public void updateRegion(List<Rect> faceBoundingBoxes, int rotationDegrees, int imageWidth, int imageHeight) {
+        this.rotationDegrees = rotationDegrees;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        if (!lastFrameWasCropped) {
+            framesSinceFullScan = 0;
+        }
+        lastFrameWasCropped = false;
+        if (faceBoundingBoxes.isEmpty()) {
+            hasRegion = false;
+            return;
+        }
+
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (int i = 0; i < faceBoundingBoxes.size(); i++) {
+            Rect box = faceBoundingBoxes.get(i);
+            left = Math.min(left, box.left);
+            top = Math.min(top, box.top);
+            right = Math.max(right, box.right);
+            bottom = Math.max(bottom, box.bottom);
+        }
+        int horizontalPadding = (int) ((right - left) * PADDING);
+        int verticalPadding = (int) ((bottom - top) * PADDING);
+        left -= horizontalPadding;
+        top -= verticalPadding;
+        right += horizontalPadding;
+        bottom += verticalPadding;
+
+        /*
+         * Now undo the rotation to find the same box in sensor coordinates.
+         */
+        int sensorLeft;
+        int sensorTop;
+        int sensorRight;
+        int sensorBottom;
+        switch (rotationDegrees) {
+            case 90:
+                sensorLeft = top;
+                sensorTop = imageHeight - right;
+                sensorRight = bottom;
+                sensorBottom = imageHeight - left;
+                break;
+            case 180:
+                sensorLeft = imageWidth - right;
+                sensorTop = imageHeight - bottom;
+                sensorRight = imageWidth - left;
+                sensorBottom = imageHeight - top;
+                break;
+            case 270:
+                sensorLeft = imageWidth - bottom;
+                sensorTop = left;
+                sensorRight = imageWidth - top;
+                sensorBottom = right;
+                break;
+            default:
+                sensorLeft = left;
+                sensorTop = top;
+                sensorRight = right;
+                sensorBottom = bottom;
+                break;
+        }
+        /*
+         * Finally, keep the box inside the image and make every edge even so that it lines up
+         * with the subsampled U and V planes.
+         */
+        sensorLeft = Math.max(0, sensorLeft) & ~1;
+        sensorTop = Math.max(0, sensorTop) & ~1;
+        sensorRight = Math.min(imageWidth, sensorRight) & ~1;
+        sensorBottom = Math.min(imageHeight, sensorBottom) & ~1;
+        if (sensorRight <= sensorLeft || sensorBottom <= sensorTop) {
+            hasRegion = false;
+            return;
+        }
+        cropLeft = sensorLeft;
+        cropTop = sensorTop;
+        cropWidth = sensorRight - sensorLeft;
+        cropHeight = sensorBottom - sensorTop;
+        hasRegion = true;
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+/*
+ * The ResolutionSelector class decides which resolution the ImageAnalysis use case should ask the
+ * camera for. Every frame costs more to analyze the more pixels it has, but the pupils of a face
+ * far from the camera are only a few pixels wide and cannot be found in a small frame. We therefore
+ * start at the lowest resolution and only move up when the smallest face in the frame becomes too
+ * narrow for reliable pupil detection, and only if frames are not already taking longer to analyze
+ * than our budget allows. When every face is comfortably large, we move back down.
+ *
+ * Changing resolution requires CameraX to rebind the analysis use case, so a change is only made
+ * after the same decision has been reached on several consecutive frames.
+ */
+public class ResolutionSelector {
+
+    /*
+     * The resolutions we may choose from, ordered from lowest to highest. These are landscape
+     * sizes since that is how the camera sensor delivers frames.
+     */
+    private static final int[] WIDTHS = {640, 1280, 1920};
+    private static final int[] HEIGHTS = {480, 720, 1080};
+
+    /*
+     * A face narrower than MINIMUM_FACE_WIDTH pixels leaves too few pixels across each eye for the
+     * darkest location to be meaningful. When moving down, we require the face to still be
+     * HYSTERESIS times wider than the minimum at the lower resolution, which stops us from
+     * bouncing between two resolutions.
+     */
+    private static final int MINIMUM_FACE_WIDTH = 150;
+    private static final double HYSTERESIS = 1.5;
+
+    /*
+     * If the average time spent analyzing a frame exceeds FRAME_TIME_BUDGET nanoseconds, the
+     * device is struggling, and we will not move up even if the faces are small.
+     */
+    private static final long FRAME_TIME_BUDGET = 100000000L;
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    private static final int FRAMES_BEFORE_CHANGE = 15;
+
+    private int currentIndex = 0;
+    private int framesVotingUp = 0;
+    private int framesVotingDown = 0;
+    private double averageFrameTime = 0;
+
+    /*
+     * Cumulative analysis time and frame count for each resolution, used for analyzing test
+     * results.
+     */
+    private final long[] totalFrameTime = new long[WIDTHS.length];
+    private final int[] totalFrames = new int[WIDTHS.length];
+
+    public int getTargetWidth() {
+        return WIDTHS[currentIndex];
+    }
+
+    public int getTargetHeight() {
+        return HEIGHTS[currentIndex];
+    }
+
+    /*
+     * This method is called once per analyzed frame with the width of the smallest face found in
+     * it (or 0 if there were no faces), the length of the longer side of the frame that face was
+     * measured in, and the time spent analyzing the frame. The frame size is needed because CameraX
+     * may not give us exactly the resolution we asked for, and because the frame may have been
+     * rotated into portrait before the faces were found. It returns true if the target resolution
+     * has changed and the analysis use case should be rebound.
+     */
+    public boolean update(int smallestFaceWidth, int frameLongSide, long frameTime) {
+        totalFrameTime[currentIndex] += frameTime;
+        totalFrames[currentIndex] += 1;
+        averageFrameTime += AVERAGE_WEIGHT * (frameTime - averageFrameTime);
+
+        if (smallestFaceWidth <= 0 || frameLongSide <= 0) {
+            /*
+             * Without a face there is nothing to base a decision on, so we stay where we are.
+             */
+            framesVotingUp = 0;
+            framesVotingDown = 0;
+            return false;
+        }
+
+        boolean overBudget = averageFrameTime > FRAME_TIME_BUDGET;
+        boolean canMoveUp = currentIndex < WIDTHS.length - 1 && !overBudget;
+        boolean canMoveDown = currentIndex > 0;
+
+        if (canMoveUp && smallestFaceWidth < MINIMUM_FACE_WIDTH) {
+            framesVotingUp += 1;
+            framesVotingDown = 0;
+        } else if (canMoveDown && smallestFaceWidth * WIDTHS[currentIndex - 1] / (double) frameLongSide >= MINIMUM_FACE_WIDTH * HYSTERESIS) {
+            framesVotingDown += 1;
+            framesVotingUp = 0;
+        } else {
+            framesVotingUp = 0;
+            framesVotingDown = 0;
+        }
+
+        if (framesVotingUp >= FRAMES_BEFORE_CHANGE) {
+            currentIndex += 1;
+        } else if (framesVotingDown >= FRAMES_BEFORE_CHANGE) {
+            currentIndex -= 1;
+        } else {
+            return false;
+        }
+        framesVotingUp = 0;
+        framesVotingDown = 0;
+        return true;
+    }
+
+    /*
+     * Returns a summary of the average analysis time per frame at each resolution that has been
+     * used so far.
+     */
+    public String getFrameTimeSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < WIDTHS.length; i++) {
+            if (totalFrames[i] == 0) {
+                continue;
+            }
+            summary.append(WIDTHS[i]).append("x").append(HEIGHTS[i]).append(": ")
+                    .append(totalFrameTime[i] / totalFrames[i] / 1000000.0).append(" ms over ")
+                    .append(totalFrames[i]).append(" frames. ");
+        }
+        return summary.toString();
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * A StrategyRegistry holds every implementation of one stage of the pipeline (for example, every
+ * PupilLocator) and decides which one to use. Each strategy is registered with an expected
+ * accuracy, and as the app runs the registry keeps track of how long each call takes and how
+ * often the result turned out to be usable. select returns the fastest strategy whose accuracy
+ * is at or above the accuracy floor. If none are, it returns the most accurate one.
+ *
+ * Until every eligible strategy has been timed MINIMUM_SAMPLES times, the registry hands them out
+ * in turn so that it has something to compare. After that, every EXPLORATION_INTERVAL selections
+ * it hands out the least used strategy instead, so that a strategy which had a bad start can
+ * recover. This includes strategies whose accuracy has fallen below the floor, since they are
+ * otherwise never used again, and a few frames of a turned head would then rule one out for the
+ * rest of the session. A strategy can also be pinned, in which case it is always selected.
+ *
+ * The strategies are referred to by the index they were registered at, which keeps the per-frame
+ * bookkeeping free of lookups and allocation. The same timings are what we report when comparing
+ * strategies, so every strategy is measured the same way.
+ */
+public class StrategyRegistry<T> {
+
+    private static final int MINIMUM_SAMPLES = 20;
+    private static final int EXPLORATION_INTERVAL = 500;
+    private static final double AVERAGE_WEIGHT = 0.05;
+
+    private final double accuracyFloor;
+    private final ArrayList<T> strategies = new ArrayList<T>();
+    private final ArrayList<String> names = new ArrayList<String>();
+    private double[] accuracies = new double[0];
+    private double[] averageTimes = new double[0];
+    private int[] samples = new int[0];
+    private int selections = 0;
+    private int pinnedIndex = -1;
+
+    public StrategyRegistry(double accuracyFloor) {
+        this.accuracyFloor = accuracyFloor;
+    }
+
+    /*
+     * Adds a strategy and returns its index. The expected accuracy, between 0 and 1, is used until
+     * the registry has seen enough outcomes of its own.
+     */
+    public int register(T strategy, String name, double expectedAccuracy) {
+        strategies.add(strategy);
+        names.add(name);
+        int count = strategies.size();
+        accuracies = Arrays.copyOf(accuracies, count);
+        averageTimes = Arrays.copyOf(averageTimes, count);
+        samples = Arrays.copyOf(samples, count);
+        accuracies[count - 1] = expectedAccuracy;
+        return count - 1;
+    }
+
+    public T get(int index) {
+        return strategies.get(index);
+    }
+
+    public int size() {
+        return strategies.size();
+    }
+
+    public double getAccuracy(int index) {
+        return accuracies[index];
+    }
+
+    /*
+     * Forces the strategy with the given name to always be selected, or clears the pin if the
+     * name is null. Returns false if there is no strategy with that name.
+     */
+    public boolean pin(String name) {
+        if (name == null) {
+            pinnedIndex = -1;
+            return true;
+        }
+        int index = names.indexOf(name);
+        if (index == -1) {
+            return false;
+        }
+        pinnedIndex = index;
+        return true;
+    }
+
+    /*
+     * Returns the index of the strategy to use for the next call.
+     */
+    public int select() {
+        if (pinnedIndex != -1) {
+            return pinnedIndex;
+        }
+        selections += 1;
+
+        int fastest = -1;
+        int leastUsed = -1;
+        int leastUsedOfAll = 0;
+        int mostAccurate = 0;
+        for (int i = 0; i < strategies.size(); i++) {
+            if (accuracies[i] > accuracies[mostAccurate]) {
+                mostAccurate = i;
+            }
+            if (samples[i] < samples[leastUsedOfAll]) {
+                leastUsedOfAll = i;
+            }
+            if (accuracies[i] < accuracyFloor) {
+                continue;
+            }
+            if (leastUsed == -1 || samples[i] < samples[leastUsed]) {
+                leastUsed = i;
+            }
+            if (fastest == -1 || averageTimes[i] < averageTimes[fastest]) {
+                fastest = i;
+            }
+        }
+
+        if (selections % EXPLORATION_INTERVAL == 0) {
+            return leastUsedOfAll;
+        }
+        if (fastest == -1) {
+            return mostAccurate;
+        }
+        if (samples[leastUsed] < MINIMUM_SAMPLES) {
+            return leastUsed;
+        }
+        return fastest;
+    }
+
+    /*
+     * Records how long one call to the strategy took, in nanoseconds.
+     */
+    public void recordTime(int index, long time) {
+        if (samples[index] == 0) {
+            averageTimes[index] = time;
+        } else {
+            averageTimes[index] += AVERAGE_WEIGHT * (time - averageTimes[index]);
+        }
+        samples[index] += 1;
+    }
+
+    /*
+     * Records whether the result of one call to the strategy turned out to be usable.
+     */
+    public void recordOutcome(int index, boolean success) {
+        accuracies[index] += AVERAGE_WEIGHT * ((success ? 1.0 : 0.0) - accuracies[index]);
+    }
+
+    /*
+     * Returns a summary of the average time and accuracy of every strategy, for analyzing test
+     * results.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < strategies.size(); i++) {
+            summary.append(names.get(i)).append(": ")
+                    .append(averageTimes[i] / 1000.0).append(" us, accuracy ")
+                    .append(accuracies[i]).append(" over ")
+                    .append(samples[i]).append(" calls. ");
+        }
+        return summary.toString();
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+
+import com.google.mlkit.vision.common.InputImage;
+
+import org.opencv.core.CvException;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.dnn.Dnn;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.FaceDetectorYN;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The YuNetFaceBackend finds faces with OpenCV's FaceDetectorYN, which runs the YuNet face
+ * detection network from https://github.com/ShiqiYu/libfacedetection.train on the CPU. Unlike ML
+ * Kit, it works entirely offline from a model file we store on the device, and it runs on any
+ * machine OpenCV does, so it can be benchmarked away from the phone.
+ *
+ * The network is small and does not need a full resolution frame, so the upright frame is shrunk
+ * to INPUT_WIDTH pixels wide before it is searched, and the results are scaled back up. The
+ * network expects a three channel image, so the grey frame is converted to BGR. Every Mat used
+ * along the way is kept between frames, and the input size of the network is only changed when
+ * the size of the frames changes, since doing so reallocates the network's input blob.
+ *
+ * YuNet finds the eyes, the tip of the nose and the corners of the mouth, but not the ears, and
+ * it cannot tell whether the eyes are open. GazeDetector only needs the ears to tell which pupil
+ * belongs to which eye, so we place them at the sides of the bounding box, level with the eyes.
+ * Nor does it measure the rotation of the head. The roll can be read off the line between the
+ * eyes, but the other two rotations are left unknown.
+ */
+public class YuNetFaceBackend implements FaceBackend {
+
+    private static final int INPUT_WIDTH = 320;
+    private static final float SCORE_THRESHOLD = 0.8f;
+    private static final float NMS_THRESHOLD = 0.3f;
+    private static final int TOP_K = 50;
+
+    /*
+     * Each row of the detection results holds the bounding box (x, y, width, height), five
+     * landmarks as x, y pairs (right eye, left eye, nose tip, right and left corner of the mouth),
+     * and finally the score.
+     */
+    private static final int VALUES_PER_FACE = 15;
+    private static final int FIRST_EYE = 4;
+    private static final int SECOND_EYE = 6;
+    private static final int NOSE = 8;
+
+    private final FaceDetectorYN faceDetector;
+    private final Size inputSize = new Size();
+    private final Mat uprightImage = new Mat();
+    private final Mat resizedImage = new Mat();
+    private final Mat colorImage = new Mat();
+    private final Mat detections = new Mat();
+    private float[] values = new float[VALUES_PER_FACE];
+
+    /*
+     * The model is the ONNX file published with FaceDetectorYN, for example
+     * face_detection_yunet_2021dec.onnx from https://github.com/opencv/opencv_zoo.
+     */
+    public YuNetFaceBackend(String modelPath) {
+        faceDetector = FaceDetectorYN.create(modelPath, "", new Size(INPUT_WIDTH, INPUT_WIDTH),
+                SCORE_THRESHOLD, NMS_THRESHOLD, TOP_K, Dnn.DNN_BACKEND_OPENCV, Dnn.DNN_TARGET_CPU);
+    }
+
+    @Override
+    public String getName() {
+        return "YuNet";
+    }
+
+    @Override
+    public void process(InputImage image, Mat greyImage, int rotationDegrees, Callback callback) {
+        /*
+         * First, turn the frame upright so that the faces are upright and the results are in the
+         * same coordinates ML Kit would give. The faces are found in this upright frame, so it is
+         * also the image GazeDetector has to search for their pupils.
+         */
+        Mat upright;
+        List<DetectedFace> faces;
+        try {
+            upright = GazeDetector.rotateUpright(greyImage, rotationDegrees, uprightImage);
+            faces = detect(upright);
+        } catch (CvException e) {
+            callback.onFailure(e);
+            callback.onComplete();
+            return;
+        }
+        callback.onSuccess(faces, upright);
+        callback.onComplete();
+    }
+
+    private List<DetectedFace> detect(Mat upright) {
+        double scale = Math.min(1.0, (double) INPUT_WIDTH / upright.cols());
+        int width = (int) Math.round(upright.cols() * scale);
+        int height = Math.max(1, (int) Math.round(upright.rows() * scale));
+        if (width != inputSize.width || height != inputSize.height) {
+            inputSize.width = width;
+            inputSize.height = height;
+            faceDetector.setInputSize(inputSize);
+        }
+        if (scale < 1.0) {
+            Imgproc.resize(upright, resizedImage, inputSize, 0, 0, Imgproc.INTER_AREA);
+            Imgproc.cvtColor(resizedImage, colorImage, Imgproc.COLOR_GRAY2BGR);
+        } else {
+            Imgproc.cvtColor(upright, colorImage, Imgproc.COLOR_GRAY2BGR);
+        }
+
+        faceDetector.detect(colorImage, detections);
+
+        int numberOfFaces = detections.empty() ? 0 : detections.rows();
+        List<DetectedFace> faces = new ArrayList<DetectedFace>(numberOfFaces);
+        if (numberOfFaces == 0) {
+            return faces;
+        }
+        if (values.length < numberOfFaces * VALUES_PER_FACE) {
+            values = new float[numberOfFaces * VALUES_PER_FACE];
+        }
+        detections.get(0, 0, values);
+        for (int i = 0; i < numberOfFaces; i++) {
+            DetectedFace face = toDetectedFace(i * VALUES_PER_FACE, scale, upright.cols(), upright.rows());
+            if (face != null) {
+                faces.add(face);
+            }
+        }
+        return faces;
+    }
+
+    /*
+     * YuNet regularly reports boxes that stick out of the frame for faces at its border, so the
+     * box is clipped to the frame, and a face with nothing left of its box inside it is dropped
+     * by returning null.
+     */
+    private DetectedFace toDetectedFace(int offset, double scale, int frameWidth, int frameHeight) {
+        int left = Math.max(0, (int) Math.round(values[offset] / scale));
+        int top = Math.max(0, (int) Math.round(values[offset + 1] / scale));
+        int right = Math.min(frameWidth, (int) Math.round((values[offset] + values[offset + 2]) / scale));
+        int bottom = Math.min(frameHeight, (int) Math.round((values[offset + 1] + values[offset + 3]) / scale));
+        if (right <= left || bottom <= top) {
+            return null;
+        }
+        PointF firstEye = getPoint(offset + FIRST_EYE, scale);
+        PointF secondEye = getPoint(offset + SECOND_EYE, scale);
+        /*
+         * The subject's left eye is the one further right in the image, which is how ML Kit
+         * reports it.
+         */
+        PointF leftEye = firstEye.x > secondEye.x ? firstEye : secondEye;
+        PointF rightEye = firstEye.x > secondEye.x ? secondEye : firstEye;
+        float eyeLevel = (leftEye.y + rightEye.y) / 2;
+        /*
+         * The roll is the angle of the line from the right eye to the left eye. Only its size is
+         * used, so we do not try to match the sign ML Kit would give.
+         */
+        float roll = (float) Math.toDegrees(Math.atan2(rightEye.y - leftEye.y, leftEye.x - rightEye.x));
+        return new DetectedFace(new Rect(left, top, right, bottom), leftEye, rightEye,
+                new PointF(right, eyeLevel), new PointF(left, eyeLevel), getPoint(offset + NOSE, scale),
+                false, null, null, Float.NaN, Float.NaN, roll);
+    }
+
+    private PointF getPoint(int index, double scale) {
+        return new PointF((float) (values[index] / scale), (float) (values[index + 1] / scale));
+    }
+
+}
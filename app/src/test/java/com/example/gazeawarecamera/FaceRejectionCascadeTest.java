@@ -0,0 +1,35 @@
+package com.example.gazeawarecamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the individual checks of FaceRejectionCascade.
+ */
+public class FaceRejectionCascadeTest {
+
+    @Test
+    public void headPose_rejectsLargeRotationsAndIgnoresUnknownOnes() {
+        assertFalse(FaceRejectionCascade.isHeadTurnedAway(0, 10, -10));
+        assertTrue(FaceRejectionCascade.isHeadTurnedAway(0, -45, 0));
+        assertTrue(FaceRejectionCascade.isHeadTurnedAway(0, 0, 60));
+        assertFalse(FaceRejectionCascade.isHeadTurnedAway(Float.NaN, Float.NaN, 5));
+    }
+
+    @Test
+    public void eyesClosed_requiresBothEyesOpen() {
+        assertFalse(FaceRejectionCascade.areEyesClosed(0.95, 0.99));
+        assertTrue(FaceRejectionCascade.areEyesClosed(0.95, 0.5));
+        assertTrue(FaceRejectionCascade.areEyesClosed(-1, 0.99));
+    }
+
+    @Test
+    public void noseOffCenter_doesNotDependOnFaceSize() {
+        assertFalse(FaceRejectionCascade.isNoseOffCenter(105, 130, 80, 70, 80));
+        assertTrue(FaceRejectionCascade.isNoseOffCenter(125, 130, 80, 70, 80));
+        assertFalse(FaceRejectionCascade.isNoseOffCenter(315, 390, 240, 210, 240));
+        assertTrue(FaceRejectionCascade.isNoseOffCenter(375, 390, 240, 210, 240));
+    }
+
+}
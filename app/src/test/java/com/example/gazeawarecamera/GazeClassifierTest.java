@@ -0,0 +1,80 @@
+package com.example.gazeawarecamera;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the GazeClassifier features and evaluation, and for reading back recorded sessions.
+ * Loading and training a model needs the OpenCV native library, so that is not covered here.
+ */
+public class GazeClassifierTest {
+
+    private static final double DELTA = 1e-6;
+
+    private static float[] extract(double scale) {
+        float[] features = new float[GazeClassifier.NUMBER_OF_FEATURES];
+        GazeClassifier.extractFeatures(features, 0, 100 * scale,
+                130 * scale, 80 * scale, 70 * scale, 80 * scale,
+                133 * scale, 79 * scale, 72 * scale, 81 * scale,
+                160 * scale, 0.95, 0.9);
+        return features;
+    }
+
+    @Test
+    public void features_doNotDependOnFaceSize() {
+        float[] small = extract(1);
+        float[] large = extract(3);
+        for (int i = 0; i < GazeClassifier.NUMBER_OF_FEATURES; i++) {
+            assertEquals(small[i], large[i], DELTA);
+        }
+    }
+
+    @Test
+    public void features_areNormalizedByEyeDistance() {
+        float[] features = extract(1);
+        assertEquals(3.0 / 60, features[0], DELTA);
+        assertEquals(-1.0 / 60, features[1], DELTA);
+        assertEquals((28.0 - 33.0) / 60, features[4], DELTA);
+        assertEquals(60.0 / 160, features[5], DELTA);
+        assertEquals(0.95, features[6], DELTA);
+    }
+
+    @Test
+    public void evaluate_isTheLogisticOfTheWeightedSum() {
+        float[] weights = new float[GazeClassifier.NUMBER_OF_FEATURES + 1];
+        weights[0] = -1;
+        weights[7] = 2;
+        GazeClassifier classifier = new GazeClassifier(weights);
+        float[] features = new float[GazeClassifier.NUMBER_OF_FEATURES + 1];
+        features[7] = 0.5f;
+
+        assertEquals(0.5, classifier.evaluate(features, 1), DELTA);
+        assertEquals(1.0 / (1.0 + Math.exp(1)), classifier.evaluate(features, 0), DELTA);
+    }
+
+    @Test
+    public void recordedSessions_areReadBack() throws IOException {
+        File file = File.createTempFile("gaze_session", ".csv");
+        file.deleteOnExit();
+        GazeSessionRecorder recorder = new GazeSessionRecorder(file, 1);
+        float[] features = extract(1);
+        recorder.record(features, 0);
+        recorder.record(features, 0);
+        recorder.close();
+
+        List<float[]> rows = new ArrayList<float[]>();
+        GazeClassifierTrainer.readSession(file, rows);
+        assertEquals(2, rows.size());
+        assertEquals(1.0, rows.get(0)[0], DELTA);
+        for (int i = 0; i < GazeClassifier.NUMBER_OF_FEATURES; i++) {
+            assertEquals(features[i], rows.get(1)[i + 1], DELTA);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * ICSI 499: Capstone Project in Computer Science
+ * Real Time Gaze Aware Mobile Application
+ * Team 7:
+ * Mathew Bilodeau (001396193)
+ * John Shaker (001301965)
+ * Brayden Lappies (001317811)
+ * Julian Oravetz (001329582)
+ * Sponsors: Dr. Pradeep Atrey and Omkar Kulkarni, Albany Lab for Privacy and Security
+ */
+
+package com.example.gazeawarecamera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.ml.LogisticRegression;
+import org.opencv.ml.Ml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The GazeClassifierTrainer trains a GazeClassifier from sessions recorded by GazeSessionRecorder.
+ * It is meant to be run offline on a computer with the OpenCV Java library installed, after the
+ * session files have been copied off of the phone:
+ *
+ * java -Djava.library.path=<OpenCV native library directory> GazeClassifierTrainer gaze_classifier.xml session1.csv session2.csv ...
+ *
+ * The trained model is saved to the first file given, which the app loads from its files
+ * directory. The accuracy of the model on the sessions it was trained on is printed at the end.
+ *
+ * Since it is a tool for the computer and not part of the app, it lives with the unit tests, which
+ * keeps it out of the APK while still compiling it against the app's classes. It can be run from
+ * Android Studio like any other class there, given the library path above as a VM option.
+ */
+public class GazeClassifierTrainer {
+
+    private static final double LEARNING_RATE = 0.01;
+    private static final int ITERATIONS = 2000;
+    private static final int MINI_BATCH_SIZE = 32;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: GazeClassifierTrainer <model output> <session> [<session> ...]");
+            return;
+        }
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        List<float[]> rows = new ArrayList<float[]>();
+        for (int i = 1; i < args.length; i++) {
+            readSession(new File(args[i]), rows);
+        }
+        System.out.println("Read " + rows.size() + " faces from " + (args.length - 1) + " sessions.");
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        Mat samples = new Mat(rows.size(), GazeClassifier.NUMBER_OF_FEATURES, CvType.CV_32F);
+        Mat labels = new Mat(rows.size(), 1, CvType.CV_32F);
+        for (int i = 0; i < rows.size(); i++) {
+            float[] row = rows.get(i);
+            labels.put(i, 0, row[0]);
+            samples.put(i, 0, Arrays.copyOfRange(row, 1, row.length));
+        }
+
+        LogisticRegression model = LogisticRegression.create();
+        model.setLearningRate(LEARNING_RATE);
+        model.setIterations(ITERATIONS);
+        model.setRegularization(LogisticRegression.REG_L2);
+        model.setTrainMethod(LogisticRegression.MINI_BATCH);
+        model.setMiniBatchSize(MINI_BATCH_SIZE);
+        model.train(samples, Ml.ROW_SAMPLE, labels);
+        model.save(args[0]);
+
+        /*
+         * We check the model the same way the app will use it, through GazeClassifier.
+         */
+        GazeClassifier classifier = GazeClassifier.load(args[0]);
+        int numberCorrect = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            boolean predicted = classifier.evaluate(rows.get(i), 1) >= 0.5;
+            if (predicted == (rows.get(i)[0] == 1)) {
+                numberCorrect += 1;
+            }
+        }
+        System.out.println("Saved model to " + args[0] + ". Training accuracy: " + (double) numberCorrect / rows.size());
+    }
+
+    /*
+     * Reads every line of a session file into rows, each as the label followed by the features.
+     * Lines that do not have the right number of values are skipped.
+     */
+    static void readSession(File file, List<float[]> rows) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(",");
+                if (values.length != GazeClassifier.NUMBER_OF_FEATURES + 1) {
+                    continue;
+                }
+                float[] row = new float[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    row[i] = Float.parseFloat(values[i]);
+                }
+                rows.add(row);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+}
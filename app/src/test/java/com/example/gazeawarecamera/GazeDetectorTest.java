@@ -0,0 +1,156 @@
+package com.example.gazeawarecamera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Property-based tests for the pupil to eye assignment in GazeDetector. Each test generates many
+ * random faces with between 2 and 20 candidate points and checks that the assignment holds for all
+ * of them.
+ */
+public class GazeDetectorTest {
+
+    private static final int NUMBER_OF_TRIALS = 2000;
+    private static final double EPSILON = 1e-3;
+
+    private final Random random = new Random(499);
+
+    /*
+     * A random face: the ears and nose are placed along the x axis in either order (the image may
+     * be mirrored), and each eye landmark sits halfway between its ear and the nose.
+     */
+    private double leftEarX;
+    private double noseX;
+    private double rightEarX;
+    private double leftEyeX;
+    private double rightEyeX;
+    private double eyeY;
+    private double[] xs;
+    private double[] ys;
+    private int count;
+
+    private void generateFace() {
+        double direction = random.nextBoolean() ? 1 : -1;
+        noseX = 500 + random.nextDouble() * 500;
+        leftEarX = noseX - direction * (50 + random.nextDouble() * 200);
+        rightEarX = noseX + direction * (50 + random.nextDouble() * 200);
+        leftEyeX = (leftEarX + noseX) / 2;
+        rightEyeX = (rightEarX + noseX) / 2;
+        eyeY = 300 + random.nextDouble() * 200;
+        count = 2 + random.nextInt(19);
+        xs = new double[count];
+        ys = new double[count];
+        double minimum = Math.min(leftEarX, rightEarX) - 100;
+        double maximum = Math.max(leftEarX, rightEarX) + 100;
+        for (int i = 0; i < count; i++) {
+            xs[i] = minimum + random.nextDouble() * (maximum - minimum);
+            ys[i] = eyeY - 50 + random.nextDouble() * 100;
+        }
+        /*
+         * Occasionally put a candidate exactly on an interval boundary, where the old exact
+         * equality check used to fail.
+         */
+        if (random.nextInt(4) == 0) {
+            xs[random.nextInt(count)] = (float) (random.nextBoolean() ? leftEarX : noseX);
+        }
+    }
+
+    private int[] assign() {
+        int[] assignment = new int[2];
+        GazeDetector.assignPupilsToEyes(xs, ys, count, leftEarX, noseX, rightEarX,
+                leftEyeX, eyeY, rightEyeX, eyeY, assignment);
+        return assignment;
+    }
+
+    private static boolean isBetween(double x, double a, double b) {
+        return x >= Math.min(a, b) - EPSILON && x <= Math.max(a, b) + EPSILON;
+    }
+
+    private double squaredDistance(int i, double landmarkX, double landmarkY) {
+        return (xs[i] - landmarkX) * (xs[i] - landmarkX) + (ys[i] - landmarkY) * (ys[i] - landmarkY);
+    }
+
+    @Test
+    public void assignedCandidates_lieInTheirIntervals() {
+        for (int trial = 0; trial < NUMBER_OF_TRIALS; trial++) {
+            generateFace();
+            int[] assignment = assign();
+            if (assignment[GazeDetector.LEFT] != -1) {
+                assertTrue(isBetween(xs[assignment[GazeDetector.LEFT]], leftEarX, noseX));
+            }
+            if (assignment[GazeDetector.RIGHT] != -1) {
+                assertTrue(isBetween(xs[assignment[GazeDetector.RIGHT]], noseX, rightEarX));
+            }
+        }
+    }
+
+    @Test
+    public void noCandidateIsAssignedToBothEyes() {
+        for (int trial = 0; trial < NUMBER_OF_TRIALS; trial++) {
+            generateFace();
+            int[] assignment = assign();
+            if (assignment[GazeDetector.LEFT] != -1) {
+                assertNotEquals(assignment[GazeDetector.LEFT], assignment[GazeDetector.RIGHT]);
+            }
+        }
+    }
+
+    @Test
+    public void everyEyeWithACandidateInItsIntervalIsAssigned() {
+        for (int trial = 0; trial < NUMBER_OF_TRIALS; trial++) {
+            generateFace();
+            int[] assignment = assign();
+            boolean leftOnly = false;
+            boolean rightOnly = false;
+            for (int i = 0; i < count; i++) {
+                boolean inLeft = isBetween(xs[i], leftEarX, noseX);
+                boolean inRight = isBetween(xs[i], noseX, rightEarX);
+                leftOnly |= inLeft && !inRight;
+                rightOnly |= inRight && !inLeft;
+            }
+            if (leftOnly) {
+                assertNotEquals(-1, assignment[GazeDetector.LEFT]);
+            }
+            if (rightOnly) {
+                assertNotEquals(-1, assignment[GazeDetector.RIGHT]);
+            }
+        }
+    }
+
+    @Test
+    public void assignedCandidate_isNearestToItsLandmark() {
+        for (int trial = 0; trial < NUMBER_OF_TRIALS; trial++) {
+            generateFace();
+            int[] assignment = assign();
+            int left = assignment[GazeDetector.LEFT];
+            int right = assignment[GazeDetector.RIGHT];
+            for (int i = 0; i < count; i++) {
+                boolean inLeft = isBetween(xs[i], leftEarX, noseX);
+                boolean inRight = isBetween(xs[i], noseX, rightEarX);
+                if (inLeft && !inRight && left != -1) {
+                    assertTrue(squaredDistance(left, leftEyeX, eyeY) <= squaredDistance(i, leftEyeX, eyeY));
+                }
+                if (inRight && !inLeft && right != -1) {
+                    assertTrue(squaredDistance(right, rightEyeX, eyeY) <= squaredDistance(i, rightEyeX, eyeY));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void candidatesOutsideTheFace_areNeverAssigned() {
+        for (int trial = 0; trial < NUMBER_OF_TRIALS; trial++) {
+            generateFace();
+            double outside = Math.max(leftEarX, rightEarX) + 1;
+            for (int i = 0; i < count; i++) {
+                xs[i] = outside + i;
+            }
+            int[] assignment = assign();
+            assertEquals(-1, assignment[GazeDetector.LEFT]);
+            assertEquals(-1, assignment[GazeDetector.RIGHT]);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.gazeawarecamera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the lookup table that maps angles to GazeDetector.Direction sectors.
+ */
+public class GazeDirectionTest {
+
+    private final Random random = new Random(499);
+
+    @Test
+    public void getDirection_matchesTheDocumentedRanges() {
+        GazeDetector.Direction[] directions = GazeDetector.Direction.values();
+        for (int trial = 0; trial < 10000; trial++) {
+            double angle = random.nextDouble() * 360;
+            assertEquals(directions[(int) (angle / 45)], GazeDetector.Direction.getDirection(angle));
+        }
+        assertEquals(GazeDetector.Direction.TOP_RIGHT_LOW, GazeDetector.Direction.getDirection(0));
+        assertEquals(GazeDetector.Direction.TOP_RIGHT_HIGH, GazeDetector.Direction.getDirection(45));
+        assertEquals(GazeDetector.Direction.BOTTOM_RIGHT_HIGH, GazeDetector.Direction.getDirection(359.9));
+    }
+
+    @Test
+    public void getDirection_wrapsAnglesOutsideOneTurn() {
+        for (int trial = 0; trial < 10000; trial++) {
+            double angle = Math.floor(random.nextDouble() * 360);
+            GazeDetector.Direction expected = GazeDetector.Direction.getDirection(angle);
+            assertEquals(expected, GazeDetector.Direction.getDirection(angle - 360));
+            assertEquals(expected, GazeDetector.Direction.getDirection(angle + 720));
+        }
+        assertEquals(GazeDetector.Direction.BOTTOM_RIGHT_HIGH, GazeDetector.Direction.getDirection(-10));
+        assertEquals(GazeDetector.Direction.TOP_LEFT_LOW, GazeDetector.Direction.getDirection(-180 - 10));
+    }
+
+    @Test
+    public void getSectorDistance_goesTheShortWayAround() {
+        assertEquals(0, GazeDetector.Direction.getSectorDistance(GazeDetector.Direction.TOP_LEFT_HIGH, GazeDetector.Direction.TOP_LEFT_HIGH));
+        assertEquals(1, GazeDetector.Direction.getSectorDistance(GazeDetector.Direction.TOP_RIGHT_LOW, GazeDetector.Direction.BOTTOM_RIGHT_HIGH));
+        assertEquals(4, GazeDetector.Direction.getSectorDistance(GazeDetector.Direction.TOP_RIGHT_LOW, GazeDetector.Direction.BOTTOM_LEFT_HIGH));
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.example.gazeawarecamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the primitive and batch computations in Geometry. The object variations pass their
+ * coordinates straight to the primitive ones, so they are covered by these as well.
+ */
+public class GeometryTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void distance_isEuclidean() {
+        assertEquals(5.0, Geometry.computeDistanceBetweenTwoPoints(0, 0, 3, 4), DELTA);
+        assertEquals(5.0, Geometry.computeDistanceBetweenTwoPoints(3, 4, 0, 0), DELTA);
+        assertEquals(Math.sqrt(2), Geometry.computeDistanceBetweenTwoPoints(1, 1, 2, 2), DELTA);
+    }
+
+    @Test
+    public void horizontalAndVerticalDistances_areSigned() {
+        assertEquals(-3.0, Geometry.computeHorizontalDistanceBetweenTwoPoints(5, 2), DELTA);
+        assertEquals(4.0, Geometry.computeVerticalDistanceBetweenTwoPoints(-1, 3), DELTA);
+    }
+
+    @Test
+    public void angle_isMeasuredFromThePositiveXAxis() {
+        assertEquals(0.0, Geometry.computeAngleBetweenTwoPoints(1, 1, 2, 1), DELTA);
+        assertEquals(90.0, Geometry.computeAngleBetweenTwoPoints(1, 1, 1, 2), DELTA);
+        assertEquals(-135.0, Geometry.computeAngleBetweenTwoPoints(0, 0, -1, -1), DELTA);
+    }
+
+    @Test
+    public void batchMethods_matchThePrimitiveMethods() {
+        double[] first = {0, 0, 10, 20, -5, 7};
+        double[] second = {3, 4, 12, 18, 1, -1};
+        double[] results = new double[3];
+
+        Geometry.computeDistancesBetweenPoints(first, second, results, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Geometry.computeDistanceBetweenTwoPoints(first[2 * i], first[2 * i + 1], second[2 * i], second[2 * i + 1]), results[i], DELTA);
+        }
+
+        Geometry.computeHorizontalDistancesBetweenPoints(first, second, results, 3);
+        assertArrayEquals(new double[]{3, 2, 6}, results, DELTA);
+
+        Geometry.computeVerticalDistancesBetweenPoints(first, second, results, 3);
+        assertArrayEquals(new double[]{4, -2, -8}, results, DELTA);
+
+        Geometry.computeAnglesBetweenPoints(first, second, results, 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Geometry.computeAngleBetweenTwoPoints(first[2 * i], first[2 * i + 1], second[2 * i], second[2 * i + 1]), results[i], DELTA);
+        }
+    }
+
+    @Test
+    public void batchMethods_leaveEntriesPastTheCountAlone() {
+        double[] first = {0, 0, 0, 0};
+        double[] second = {1, 1, 1, 1};
+        double[] results = {-1, -1};
+        Geometry.computeDistancesBetweenPoints(first, second, results, 1);
+        assertEquals(-1.0, results[1], DELTA);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.gazeawarecamera;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HeadPoseGazeModel against a synthetic replay corpus. Each trial places a head with a
+ * random size, position, yaw, pitch and roll in front of the camera, points both eyes in a chosen
+ * direction, and projects the eye landmarks and pupils into the image with a little noise, the way
+ * a face backend and pupil locator would report them.
+ */
+public class HeadPoseGazeModelTest {
+
+    private static final int NUMBER_OF_TRIALS = 2000;
+    private static final double MAXIMUM_YAW = 30;
+    private static final double MAXIMUM_PITCH = 20;
+    private static final double MAXIMUM_ROLL = 30;
+    private static final double LANDMARK_NOISE = 0.01;
+
+    private final Random random = new Random(499);
+    private final double[] points = new double[8];
+    private final double[] gazeError = new double[2];
+
+    /*
+     * Fills points with the left eye, right eye, left pupil and right pupil of a head whose eyes are
+     * scale pixels apart. The head is rotated by the given angles in degrees, and the eyes are
+     * turned away from the camera by gazeYaw and gazePitch. The image is orthographic, with y
+     * pointing down.
+     */
+    private void projectFace(double scale, double yaw, double pitch, double roll, double gazeYaw, double gazePitch) {
+        double centerX = 200 + random.nextDouble() * 400;
+        double centerY = 200 + random.nextDouble() * 400;
+        double r = HeadPoseGazeModel.EYEBALL_RADIUS;
+        for (int eye = 0; eye < 2; eye++) {
+            /*
+             * In the coordinates of the head, the subject's left eye is at +x, the face points
+             * toward +z, and the eyeball centers sit one radius behind the landmarks.
+             */
+            double eyeX = eye == 0 ? 0.5 : -0.5;
+            double[] landmark = rotate(new double[]{eyeX, 0, 0}, yaw, pitch);
+            double[] eyeball = rotate(new double[]{eyeX, 0, -r}, yaw, pitch);
+            double[] gaze = rotate(new double[]{0, 0, 1}, gazeYaw, gazePitch);
+            double[] pupil = {eyeball[0] + r * gaze[0], eyeball[1] + r * gaze[1]};
+            toImage(landmark[0], landmark[1], scale, roll, centerX, centerY, 2 * eye);
+            toImage(pupil[0], pupil[1], scale, roll, centerX, centerY, 4 + 2 * eye);
+        }
+    }
+
+    /*
+     * Turns a point by yaw about the vertical axis and then tilts it by pitch, so that a positive
+     * yaw moves the face toward +x and a positive pitch moves it up.
+     */
+    private static double[] rotate(double[] p, double yaw, double pitch) {
+        double y = Math.toRadians(yaw);
+        double x = Math.toRadians(pitch);
+        double px = p[0] * Math.cos(y) + p[2] * Math.sin(y);
+        double pz = -p[0] * Math.sin(y) + p[2] * Math.cos(y);
+        double py = p[1] * Math.cos(x) + pz * Math.sin(x);
+        pz = -p[1] * Math.sin(x) + pz * Math.cos(x);
+        return new double[]{px, py, pz};
+    }
+
+    private void toImage(double x, double y, double scale, double roll, double centerX, double centerY, int index) {
+        double z = Math.toRadians(roll);
+        double imageX = x * Math.cos(z) + y * Math.sin(z);
+        double imageY = -(-x * Math.sin(z) + y * Math.cos(z));
+        points[index] = centerX + scale * (imageX + random.nextGaussian() * LANDMARK_NOISE);
+        points[index + 1] = centerY + scale * (imageY + random.nextGaussian() * LANDMARK_NOISE);
+    }
+
+    private double randomAngle(double maximum) {
+        return (random.nextDouble() * 2 - 1) * maximum;
+    }
+
+    private boolean classify(double yaw, double pitch) {
+        HeadPoseGazeModel.computeGazeError(points[0], points[1], points[2], points[3],
+                points[4], points[5], points[6], points[7], pitch, yaw, gazeError);
+        return HeadPoseGazeModel.isWithinTolerance(gazeError);
+    }
+
+    @Test
+    public void computeGazeError_acceptsTurnedHeadsLookingAtTheCamera() {
+        int accepted = 0;
+        for (int trial = 0; trial < NUMBER_OF_TRIALS; trial++) {
+            double yaw = randomAngle(MAXIMUM_YAW);
+            double pitch = randomAngle(MAXIMUM_PITCH);
+            projectFace(30 + random.nextDouble() * 170, yaw, pitch, randomAngle(MAXIMUM_ROLL), 0, 0);
+            if (classify(yaw, pitch)) {
+                accepted++;
+            }
+        }
+        assertTrue("accepted " + accepted, accepted >= NUMBER_OF_TRIALS * 0.95);
+    }
+
+    @Test
+    public void computeGazeError_rejectsEyesTurnedAway() {
+        int rejected = 0;
+        for (int trial = 0; trial < NUMBER_OF_TRIALS; trial++) {
+            double yaw = randomAngle(MAXIMUM_YAW);
+            double pitch = randomAngle(MAXIMUM_PITCH);
+            double away = (40 + random.nextDouble() * 20) * (random.nextBoolean() ? 1 : -1);
+            boolean horizontal = random.nextBoolean();
+            projectFace(30 + random.nextDouble() * 170, yaw, pitch, randomAngle(MAXIMUM_ROLL),
+                    horizontal ? away : 0, horizontal ? 0 : away);
+            if (!classify(yaw, pitch)) {
+                rejected++;
+            }
+        }
+        assertTrue("rejected " + rejected, rejected >= NUMBER_OF_TRIALS * 0.95);
+    }
+
+    @Test
+    public void computeGazeError_doesNotDependOnTheSizeOfTheFace() {
+        double[] small = new double[2];
+        HeadPoseGazeModel.computeGazeError(100, 100, 80, 100, 101, 99, 81, 99, 10, -5, small);
+        HeadPoseGazeModel.computeGazeError(1000, 1000, 800, 1000, 1010, 990, 810, 990, 10, -5, gazeError);
+        assertEquals(small[0], gazeError[0], 1e-9);
+        assertEquals(small[1], gazeError[1], 1e-9);
+    }
+
+    @Test
+    public void computeGazeError_treatsUnknownAnglesAsZero() {
+        double[] known = new double[2];
+        HeadPoseGazeModel.computeGazeError(140, 100, 80, 100, 142, 101, 82, 101, 0, 0, known);
+        HeadPoseGazeModel.computeGazeError(140, 100, 80, 100, 142, 101, 82, 101, Double.NaN, Double.NaN, gazeError);
+        assertArrayEquals(known, gazeError, 1e-9);
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.example.gazeawarecamera;
+
+import org.junit.Test;
+import org.opencv.core.Rect;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for how GazeDetector decides whether an eye detector or pupil locator agrees with the
+ * reference strategies.
+ */
+public class StrategyAgreementTest {
+
+    @Test
+    public void eyeBoxesAgree_whenEveryReferenceCenterIsCovered() {
+        Rect[] reference = {new Rect(10, 10, 20, 10), new Rect(60, 12, 20, 10)};
+        Rect[] boxes = {new Rect(55, 5, 30, 20), new Rect(5, 5, 30, 20)};
+
+        assertTrue(GazeDetector.eyeBoxesAgree(boxes, reference));
+    }
+
+    @Test
+    public void eyeBoxesDisagree_whenAnEyeIsMissedOrMisplaced() {
+        Rect[] reference = {new Rect(10, 10, 20, 10), new Rect(60, 12, 20, 10)};
+
+        assertFalse(GazeDetector.eyeBoxesAgree(new Rect[]{new Rect(5, 5, 30, 20)}, reference));
+        assertFalse(GazeDetector.eyeBoxesAgree(new Rect[]{new Rect(5, 5, 30, 20), new Rect(5, 40, 30, 20)}, reference));
+    }
+
+    @Test
+    public void pupilsAgree_withinAFractionOfTheEyeWidth() {
+        double eyeWidth = 40;
+        double limit = GazeDetector.PUPIL_AGREEMENT * eyeWidth;
+
+        assertTrue(GazeDetector.pupilsAgree(20, 10, 20 + limit * 0.9, 10, eyeWidth));
+        assertFalse(GazeDetector.pupilsAgree(20, 10, 20, 10 + limit * 1.1, eyeWidth));
+    }
+}
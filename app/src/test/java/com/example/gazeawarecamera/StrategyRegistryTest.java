@@ -0,0 +1,97 @@
+package com.example.gazeawarecamera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for how StrategyRegistry chooses between strategies.
+ */
+public class StrategyRegistryTest {
+
+    /*
+     * Runs enough selections for every strategy to have been timed, recording the given time for
+     * each one.
+     */
+    private static void warmUp(StrategyRegistry<String> registry, long[] times) {
+        for (int i = 0; i < 100; i++) {
+            int selected = registry.select();
+            registry.recordTime(selected, times[selected]);
+        }
+    }
+
+    @Test
+    public void select_prefersTheFastestAccurateStrategy() {
+        StrategyRegistry<String> registry = new StrategyRegistry<String>(0.7);
+        registry.register("slow", "slow", 0.9);
+        registry.register("fast", "fast", 0.8);
+        registry.register("fastest", "fastest", 0.5);
+        warmUp(registry, new long[]{3000, 2000, 1000});
+
+        assertEquals("fast", registry.get(registry.select()));
+    }
+
+    @Test
+    public void select_fallsBackToTheMostAccurateStrategy() {
+        StrategyRegistry<String> registry = new StrategyRegistry<String>(0.95);
+        registry.register("a", "a", 0.5);
+        registry.register("b", "b", 0.9);
+
+        assertEquals("b", registry.get(registry.select()));
+    }
+
+    @Test
+    public void recordOutcome_dropsAStrategyThatKeepsFailing() {
+        StrategyRegistry<String> registry = new StrategyRegistry<String>(0.7);
+        int slow = registry.register("slow", "slow", 0.9);
+        int fast = registry.register("fast", "fast", 0.9);
+        warmUp(registry, new long[]{2000, 1000});
+        assertEquals(fast, registry.select());
+
+        for (int i = 0; i < 100; i++) {
+            registry.recordOutcome(fast, false);
+        }
+        assertEquals(slow, registry.select());
+    }
+
+    @Test
+    public void select_letsADroppedStrategyRecover() {
+        StrategyRegistry<String> registry = new StrategyRegistry<String>(0.7);
+        registry.register("slow", "slow", 0.9);
+        int fast = registry.register("fast", "fast", 0.9);
+        warmUp(registry, new long[]{2000, 1000});
+        for (int i = 0; i < 100; i++) {
+            registry.recordOutcome(fast, false);
+        }
+
+        /*
+         * The failures were only a bad patch, so every time the dropped strategy is explored
+         * again it succeeds, until it is back above the floor.
+         */
+        int timesExplored = 0;
+        for (int i = 0; i < 20000; i++) {
+            int selected = registry.select();
+            registry.recordTime(selected, selected == fast ? 1000 : 2000);
+            registry.recordOutcome(selected, true);
+            if (selected == fast) {
+                timesExplored += 1;
+            }
+        }
+        assertTrue(timesExplored > 0);
+        assertEquals(fast, registry.select());
+    }
+
+    @Test
+    public void pin_overridesSelection() {
+        StrategyRegistry<String> registry = new StrategyRegistry<String>(0.7);
+        registry.register("a", "a", 0.9);
+        int b = registry.register("b", "b", 0.1);
+
+        assertTrue(registry.pin("b"));
+        assertEquals(b, registry.select());
+        assertFalse(registry.pin("c"));
+        assertTrue(registry.pin(null));
+        assertNotEquals(b, registry.select());
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.opencv.android;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+
+/**
+ * A pool of mutable Bitmaps for converting Mats to Bitmaps without creating a new Bitmap for
+ * every conversion.
+ * <p>
+ * Bitmaps that are no longer needed are released into the pool, and acquire() hands them out
+ * again. A Bitmap of exactly the requested size and config is preferred. Failing that, a larger
+ * pooled Bitmap is reconfigured to the requested size, which reuses its pixel memory. Only when
+ * neither exists is a new Bitmap created. The pool keeps the released Bitmaps in least recently
+ * released order, and when their total allocation exceeds the byte budget the oldest ones are
+ * recycled.
+ * <p>
+ * All methods are synchronized, so one pool may be shared between the preview and other users.
+ */
+public class BitmapPool {
+
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    private static BitmapPool sShared;
+
+    private final long mMaxBytes;
+    // least recently released first
+    private final ArrayList<Bitmap> mBitmaps = new ArrayList<Bitmap>();
+    private long mPooledBytes = 0;
+    private int mHits = 0;
+    private int mReconfigured = 0;
+    private int mMisses = 0;
+    private int mEvictions = 0;
+
+    /**
+     * @param maxBytes - the most pixel memory the released Bitmaps may hold before the least
+     * recently released ones are recycled
+     */
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a pool shared by the whole process, with a budget of 32 MB.
+     */
+    public static synchronized BitmapPool getShared() {
+        if (sShared == null)
+            sShared = new BitmapPool(DEFAULT_MAX_BYTES);
+        return sShared;
+    }
+
+    private static long bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+        case ALPHA_8:
+            return 1;
+        case RGB_565:
+            return 2;
+        default:
+            return 4;
+        }
+    }
+
+    /**
+     * Returns a mutable Bitmap of the given size and config. Its contents are undefined.
+     */
+    public synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        // the most recently released Bitmaps are the most likely to match, so search backwards
+        for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = mBitmaps.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                take(i);
+                mHits++;
+                return bitmap;
+            }
+        }
+        long needed = width * height * bytesPerPixel(config);
+        for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = mBitmaps.get(i);
+            if (bitmap.getAllocationByteCount() >= needed) {
+                take(i);
+                bitmap.reconfigure(width, height, config);
+                mReconfigured++;
+                return bitmap;
+            }
+        }
+        mMisses++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    private void take(int index) {
+        Bitmap bitmap = mBitmaps.remove(index);
+        mPooledBytes -= bitmap.getAllocationByteCount();
+    }
+
+    /**
+     * Gives a Bitmap back to the pool. The caller must not use it afterwards. Immutable and
+     * recycled Bitmaps are ignored.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable())
+            return;
+        mBitmaps.add(bitmap);
+        mPooledBytes += bitmap.getAllocationByteCount();
+        while (mPooledBytes > mMaxBytes && !mBitmaps.isEmpty()) {
+            Bitmap oldest = mBitmaps.remove(0);
+            mPooledBytes -= oldest.getAllocationByteCount();
+            oldest.recycle();
+            mEvictions++;
+        }
+    }
+
+    /**
+     * Recycles every pooled Bitmap.
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : mBitmaps)
+            bitmap.recycle();
+        mBitmaps.clear();
+        mPooledBytes = 0;
+    }
+
+    public synchronized String getSummary() {
+        return mHits + " hits, " + mReconfigured + " reconfigured, " + mMisses + " created, "
+                + mEvictions + " evicted, " + mBitmaps.size() + " pooled (" + mPooledBytes / 1024 + " KB)";
+    }
+}
@@ -51,6 +51,20 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected boolean mCameraPermissionGranted = false;
     protected FpsMeter mFpsMeter = null;
 
+    // Draw geometry, recomputed only when the canvas size, the bitmap size or mScale changes
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private int mDrawCanvasWidth = -1;
+    private int mDrawCanvasHeight = -1;
+    private int mDrawBitmapWidth = -1;
+    private int mDrawBitmapHeight = -1;
+    private float mDrawScale = -1;
+
+    // Frame pacing state, see setFramePacingEnabled()
+    private boolean mFramePacingEnabled = false;
+    private Mat mLastDrawnMat;
+    private final AccessTrackingFrame mTrackingFrame = new AccessTrackingFrame();
+
     public static final int CAMERA_ID_ANY   = -1;
     public static final int CAMERA_ID_BACK  = 99;
     public static final int CAMERA_ID_FRONT = 98;
@@ -271,6 +285,21 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mFpsMeter = null;
     }
 
+    /**
+     * This method enables or disables frame pacing. When enabled, a frame is not converted
+     * and drawn again if the listener did not read the camera frame (neither rgba() nor gray()
+     * was called) and returned the same Mat it returned for the previous frame. This lets a
+     * listener that only processes some of the frames return its last result for the others
+     * without paying for Utils.matToBitmap() and drawBitmap(); the surface keeps showing the
+     * last drawn frame. A listener that updates its returned Mat in place without reading the
+     * camera frame must not use this mode.
+     * @param enabled - whether unchanged frames are skipped
+     */
+    public void setFramePacingEnabled(boolean enabled) {
+        mFramePacingEnabled = enabled;
+        mLastDrawnMat = null;
+    }
+
     /**
      *
      * @param listener
@@ -391,8 +420,11 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     private void onExitStartedState() {
         disconnectCamera();
         if (mCacheBitmap != null) {
-            mCacheBitmap.recycle();
+            // the next start usually needs a bitmap of the same size, so keep it for reuse
+            BitmapPool.getShared().release(mCacheBitmap);
+            mCacheBitmap = null;
         }
+        mLastDrawnMat = null;
     }
 
     /**
@@ -405,7 +437,16 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         Mat modified;
 
         if (mListener != null) {
-            modified = mListener.onCameraFrame(frame);
+            if (mFramePacingEnabled) {
+                mTrackingFrame.track(frame);
+                modified = mListener.onCameraFrame(mTrackingFrame);
+                boolean unchanged = modified != null && modified == mLastDrawnMat && !mTrackingFrame.wasAccessed();
+                mTrackingFrame.track(null);
+                if (unchanged)
+                    return;
+            } else {
+                modified = mListener.onCameraFrame(frame);
+            }
         } else {
             modified = frame.rgba();
         }
@@ -421,27 +462,14 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
                 bmpValid = false;
             }
         }
+        mLastDrawnMat = bmpValid ? modified : null;
 
         if (bmpValid && mCacheBitmap != null) {
             Canvas canvas = getHolder().lockCanvas();
             if (canvas != null) {
                 canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
-                if (BuildConfig.DEBUG)
-                    Log.d(TAG, "mStretch value: " + mScale);
-
-                if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
-                         (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
-                } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
-                         (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
-                }
+                updateDrawRects(canvas.getWidth(), canvas.getHeight());
+                canvas.drawBitmap(mCacheBitmap, mSrcRect, mDstRect, null);
 
                 if (mFpsMeter != null) {
                     mFpsMeter.measure();
@@ -452,6 +480,69 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
         }
     }
 
+    /**
+     * Computes the source and destination rectangles for drawing mCacheBitmap centered on a
+     * canvas of the given size, scaled by mScale if it is set. The rectangles are reused and
+     * only recomputed when one of their inputs has changed since the last frame.
+     */
+    private void updateDrawRects(int canvasWidth, int canvasHeight) {
+        int bitmapWidth = mCacheBitmap.getWidth();
+        int bitmapHeight = mCacheBitmap.getHeight();
+        if (canvasWidth == mDrawCanvasWidth && canvasHeight == mDrawCanvasHeight
+                && bitmapWidth == mDrawBitmapWidth && bitmapHeight == mDrawBitmapHeight
+                && mScale == mDrawScale)
+            return;
+
+        mDrawCanvasWidth = canvasWidth;
+        mDrawCanvasHeight = canvasHeight;
+        mDrawBitmapWidth = bitmapWidth;
+        mDrawBitmapHeight = bitmapHeight;
+        mDrawScale = mScale;
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "mStretch value: " + mScale);
+
+        mSrcRect.set(0, 0, bitmapWidth, bitmapHeight);
+        if (mScale != 0) {
+            int left = (int)((canvasWidth - mScale*bitmapWidth) / 2);
+            int top = (int)((canvasHeight - mScale*bitmapHeight) / 2);
+            mDstRect.set(left, top, left + (int)(mScale*bitmapWidth), top + (int)(mScale*bitmapHeight));
+        } else {
+            int left = (canvasWidth - bitmapWidth) / 2;
+            int top = (canvasHeight - bitmapHeight) / 2;
+            mDstRect.set(left, top, left + bitmapWidth, top + bitmapHeight);
+        }
+    }
+
+    /**
+     * Wraps the camera frame handed to the listener in frame pacing mode and records whether
+     * the listener read it.
+     */
+    private static class AccessTrackingFrame implements CvCameraViewFrame {
+        private CvCameraViewFrame mFrame;
+        private boolean mAccessed;
+
+        void track(CvCameraViewFrame frame) {
+            mFrame = frame;
+            mAccessed = false;
+        }
+
+        boolean wasAccessed() {
+            return mAccessed;
+        }
+
+        @Override
+        public Mat rgba() {
+            mAccessed = true;
+            return mFrame.rgba();
+        }
+
+        @Override
+        public Mat gray() {
+            mAccessed = true;
+            return mFrame.gray();
+        }
+    }
+
     /**
      * This method is invoked shall perform concrete operation to initialize the camera.
      * CONTRACT: as a result of this method variables mFrameWidth and mFrameHeight MUST be
@@ -470,7 +561,7 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // NOTE: On Android 4.1.x the function must be called before SurfaceTexture constructor!
     protected void AllocateCache()
     {
-        mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
+        mCacheBitmap = BitmapPool.getShared().acquire(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
     }
 
     public interface ListItemAccessor {
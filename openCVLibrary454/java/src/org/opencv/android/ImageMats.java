@@ -0,0 +1,201 @@
+package org.opencv.android;
+
+import java.nio.ByteBuffer;
+
+import android.media.Image;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Mat views of the planes of a YUV_420_888 android.media.Image, without copying any pixels.
+ * <p>
+ * y() returns the luma plane as a CV_8UC1 Mat. When the chroma planes are interleaved (NV12 or
+ * NV21 in memory), uv() returns them as a single CV_8UC2 Mat that can be passed straight to
+ * Imgproc.cvtColorTwoPlane() with the code from twoPlaneRgbaCode(). When they are planar, u() and
+ * v() return them as separate CV_8UC1 Mats instead.
+ * <p>
+ * The layout is detected once for each stream, that is for each new width, height and format,
+ * rather than on every frame. Each view is a Mat header over the plane's own buffer and is kept
+ * between calls: it is returned again as long as the camera hands back the same buffer at the same
+ * size, and is freed as soon as it is replaced. The prebuilt native library has no way of pointing
+ * an existing header at a new buffer, so a new image with new buffers still needs new headers, but
+ * the old ones never pile up waiting for the finalizer.
+ * <p>
+ * The returned Mats belong to this object and are only valid until the image is closed. They must
+ * not be released by the caller. An ImageMats is not thread safe; use one per stream.
+ */
+public class ImageMats {
+
+    public static final int LAYOUT_UNKNOWN = 0;
+    /** Interleaved chroma with U first. */
+    public static final int LAYOUT_NV12 = 1;
+    /** Interleaved chroma with V first. */
+    public static final int LAYOUT_NV21 = 2;
+    /** Separate U and V planes with a pixel stride of 1. */
+    public static final int LAYOUT_PLANAR = 3;
+
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private int mFormat = -1;
+    private int mLayout = LAYOUT_UNKNOWN;
+
+    private final Header mY = new Header();
+    private final Header mUv = new Header();
+    private final Header mU = new Header();
+    private final Header mV = new Header();
+
+    private int mDetections = 0;
+    private int mCreated = 0;
+    private int mReused = 0;
+
+    /**
+     * A Mat header over one plane buffer, remembered together with the buffer and geometry it
+     * was created for.
+     */
+    private final class Header {
+        private Mat mMat;
+        private ByteBuffer mBuffer;
+        private int mRows;
+        private int mCols;
+        private int mType;
+        private int mStep;
+
+        Mat view(ByteBuffer buffer, int rows, int cols, int type, int step) {
+            if (mMat != null && mBuffer == buffer && mRows == rows && mCols == cols && mType == type && mStep == step) {
+                mReused++;
+                return mMat;
+            }
+            release();
+            mMat = new Mat(rows, cols, type, buffer, step);
+            mBuffer = buffer;
+            mRows = rows;
+            mCols = cols;
+            mType = type;
+            mStep = step;
+            mCreated++;
+            return mMat;
+        }
+
+        void release() {
+            if (mMat != null) {
+                mMat.close();
+                mMat = null;
+            }
+            mBuffer = null;
+        }
+    }
+
+    /**
+     * Returns the chroma layout of the image, one of the LAYOUT_ constants.
+     */
+    public int layout(Image image) {
+        if (image.getWidth() != mWidth || image.getHeight() != mHeight || image.getFormat() != mFormat)
+            detect(image);
+        return mLayout;
+    }
+
+    private void detect(Image image) {
+        Image.Plane[] planes = image.getPlanes();
+        mWidth = image.getWidth();
+        mHeight = image.getHeight();
+        mFormat = image.getFormat();
+        mDetections++;
+        release();
+        if (planes.length < 3 || planes[0].getPixelStride() != 1) {
+            mLayout = LAYOUT_UNKNOWN;
+        } else if (planes[1].getPixelStride() == 1 && planes[2].getPixelStride() == 1) {
+            mLayout = LAYOUT_PLANAR;
+        } else if (planes[1].getPixelStride() == 2 && planes[2].getPixelStride() == 2) {
+            // the U and V planes overlap, and whichever starts first holds the interleaved pairs
+            Mat u = new Mat(1, 1, CvType.CV_8UC1, planes[1].getBuffer());
+            Mat v = new Mat(1, 1, CvType.CV_8UC1, planes[2].getBuffer());
+            long addrDiff = v.dataAddr() - u.dataAddr();
+            u.close();
+            v.close();
+            if (addrDiff == 1)
+                mLayout = LAYOUT_NV12;
+            else if (addrDiff == -1)
+                mLayout = LAYOUT_NV21;
+            else
+                mLayout = LAYOUT_UNKNOWN;
+        } else {
+            mLayout = LAYOUT_UNKNOWN;
+        }
+    }
+
+    /**
+     * Returns the luma plane as a height x width CV_8UC1 Mat.
+     */
+    public Mat y(Image image) {
+        layout(image);
+        Image.Plane plane = image.getPlanes()[0];
+        if (plane.getPixelStride() != 1)
+            throw new IllegalArgumentException("Luma plane has pixel stride " + plane.getPixelStride());
+        return mY.view(plane.getBuffer(), mHeight, mWidth, CvType.CV_8UC1, plane.getRowStride());
+    }
+
+    /**
+     * Returns the interleaved chroma planes as a height/2 x width/2 CV_8UC2 Mat, in the order
+     * given by layout(), or null if the chroma planes are not interleaved.
+     */
+    public Mat uv(Image image) {
+        int layout = layout(image);
+        if (layout != LAYOUT_NV12 && layout != LAYOUT_NV21)
+            return null;
+        Image.Plane plane = image.getPlanes()[layout == LAYOUT_NV12 ? 1 : 2];
+        return mUv.view(plane.getBuffer(), mHeight / 2, mWidth / 2, CvType.CV_8UC2, plane.getRowStride());
+    }
+
+    /**
+     * Returns the U plane as a height/2 x width/2 CV_8UC1 Mat, or null if the chroma planes are
+     * not planar.
+     */
+    public Mat u(Image image) {
+        if (layout(image) != LAYOUT_PLANAR)
+            return null;
+        Image.Plane plane = image.getPlanes()[1];
+        return mU.view(plane.getBuffer(), mHeight / 2, mWidth / 2, CvType.CV_8UC1, plane.getRowStride());
+    }
+
+    /**
+     * Returns the V plane as a height/2 x width/2 CV_8UC1 Mat, or null if the chroma planes are
+     * not planar.
+     */
+    public Mat v(Image image) {
+        if (layout(image) != LAYOUT_PLANAR)
+            return null;
+        Image.Plane plane = image.getPlanes()[2];
+        return mV.view(plane.getBuffer(), mHeight / 2, mWidth / 2, CvType.CV_8UC1, plane.getRowStride());
+    }
+
+    /**
+     * Returns the Imgproc.cvtColorTwoPlane() code that converts y() and uv() of the image to
+     * RGBA, or -1 if the chroma planes are not interleaved.
+     */
+    public int twoPlaneRgbaCode(Image image) {
+        switch (layout(image)) {
+        case LAYOUT_NV12:
+            return Imgproc.COLOR_YUV2RGBA_NV12;
+        case LAYOUT_NV21:
+            return Imgproc.COLOR_YUV2RGBA_NV21;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * Frees every header. The next call creates them again; the detected layout is kept.
+     */
+    public void release() {
+        mY.release();
+        mUv.release();
+        mU.release();
+        mV.release();
+    }
+
+    public String getSummary() {
+        return mDetections + " layout detections, " + mCreated + " headers created, " + mReused + " reused";
+    }
+}
@@ -54,6 +54,7 @@ public class JavaCamera2View extends CameraBridgeViewBase {
 
     private HandlerThread mBackgroundThread;
     protected Handler mBackgroundHandler;
+    private JavaCamera2Frame mFrame;
 
     public JavaCamera2View(Context context, int cameraId) {
         super(context, cameraId);
@@ -183,9 +184,12 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                     assert (planes.length == 3);
                     assert (image.getFormat() == mPreviewFormat);
 
-                    JavaCamera2Frame tempFrame = new JavaCamera2Frame(image);
-                    deliverAndDrawFrame(tempFrame);
-                    tempFrame.release();
+                    // the frame is reused for every image so that its buffers are allocated once
+                    if (mFrame == null)
+                        mFrame = new JavaCamera2Frame();
+                    mFrame.setImage(image);
+                    deliverAndDrawFrame(mFrame);
+                    mFrame.releaseImage();
                     image.close();
                 }
             }, mBackgroundHandler);
@@ -247,6 +251,10 @@ public class JavaCamera2View extends CameraBridgeViewBase {
                 mImageReader.close();
                 mImageReader = null;
             }
+            if (null != mFrame) {
+                mFrame.release();
+                mFrame = null;
+            }
         }
         Log.i(LOGTAG, "camera closed!");
     }
@@ -330,14 +338,7 @@ public class JavaCamera2View extends CameraBridgeViewBase {
     private class JavaCamera2Frame implements CvCameraViewFrame {
         @Override
         public Mat gray() {
-            Image.Plane[] planes = mImage.getPlanes();
-            int w = mImage.getWidth();
-            int h = mImage.getHeight();
-            assert(planes[0].getPixelStride() == 1);
-            ByteBuffer y_plane = planes[0].getBuffer();
-            int y_plane_step = planes[0].getRowStride();
-            mGray = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
-            return mGray;
+            return mImageMats.y(mImage);
         }
 
         @Override
@@ -345,103 +346,89 @@ public class JavaCamera2View extends CameraBridgeViewBase {
             Image.Plane[] planes = mImage.getPlanes();
             int w = mImage.getWidth();
             int h = mImage.getHeight();
-            int chromaPixelStride = planes[1].getPixelStride();
-
-
-            if (chromaPixelStride == 2) { // Chroma channels are interleaved
-                assert(planes[0].getPixelStride() == 1);
-                assert(planes[2].getPixelStride() == 2);
-                ByteBuffer y_plane = planes[0].getBuffer();
-                int y_plane_step = planes[0].getRowStride();
-                ByteBuffer uv_plane1 = planes[1].getBuffer();
-                int uv_plane1_step = planes[1].getRowStride();
-                ByteBuffer uv_plane2 = planes[2].getBuffer();
-                int uv_plane2_step = planes[2].getRowStride();
-                Mat y_mat = new Mat(h, w, CvType.CV_8UC1, y_plane, y_plane_step);
-                Mat uv_mat1 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane1, uv_plane1_step);
-                Mat uv_mat2 = new Mat(h / 2, w / 2, CvType.CV_8UC2, uv_plane2, uv_plane2_step);
-                long addr_diff = uv_mat2.dataAddr() - uv_mat1.dataAddr();
-                if (addr_diff > 0) {
-                    assert(addr_diff == 1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat1, mRgba, Imgproc.COLOR_YUV2RGBA_NV12);
-                } else {
-                    assert(addr_diff == -1);
-                    Imgproc.cvtColorTwoPlane(y_mat, uv_mat2, mRgba, Imgproc.COLOR_YUV2RGBA_NV21);
-                }
+            int twoPlaneCode = mImageMats.twoPlaneRgbaCode(mImage);
+
+            if (twoPlaneCode >= 0) { // Chroma channels are interleaved
+                // The Y and UV views are cached headers over the plane buffers, and the NV12 or
+                // NV21 order was detected once for the stream.
+                Imgproc.cvtColorTwoPlane(mImageMats.y(mImage), mImageMats.uv(mImage), mRgba, twoPlaneCode);
                 return mRgba;
             } else { // Chroma channels are not interleaved
-                byte[] yuv_bytes = new byte[w*(h+h/2)];
-                ByteBuffer y_plane = planes[0].getBuffer();
-                ByteBuffer u_plane = planes[1].getBuffer();
-                ByteBuffer v_plane = planes[2].getBuffer();
-
-                int yuv_bytes_offset = 0;
-
-                int y_plane_step = planes[0].getRowStride();
-                if (y_plane_step == w) {
-                    y_plane.get(yuv_bytes, 0, w*h);
-                    yuv_bytes_offset = w*h;
-                } else {
-                    int padding = y_plane_step - w;
-                    for (int i = 0; i < h; i++){
-                        y_plane.get(yuv_bytes, yuv_bytes_offset, w);
-                        yuv_bytes_offset += w;
-                        if (i < h - 1) {
-                            y_plane.position(y_plane.position() + padding);
-                        }
-                    }
-                    assert(yuv_bytes_offset == w * h);
+                // Repack the three planes into the I420 layout expected by cvtColor. The
+                // destination is a direct buffer owned by this frame and wrapped by mYuvMat once
+                // per image size, so no per-frame garbage is created and no extra JNI copy is
+                // needed to get the bytes into the Mat.
+                int yuvSize = w * (h + h / 2);
+                if (mYuvBuffer == null || mYuvBuffer.capacity() != yuvSize) {
+                    mYuvBuffer = ByteBuffer.allocateDirect(yuvSize);
+                    if (mYuvMat != null)
+                        mYuvMat.release();
+                    mYuvMat = new Mat(h + h / 2, w, CvType.CV_8UC1, mYuvBuffer);
                 }
+                mYuvBuffer.clear();
+                copyPlane(planes[0].getBuffer(), planes[0].getRowStride(), w, h, mYuvBuffer);
+                copyPlane(planes[1].getBuffer(), planes[1].getRowStride(), w / 2, h / 2, mYuvBuffer);
+                copyPlane(planes[2].getBuffer(), planes[2].getRowStride(), w / 2, h / 2, mYuvBuffer);
+                assert(mYuvBuffer.position() == yuvSize);
 
-                int chromaRowStride = planes[1].getRowStride();
-                int chromaRowPadding = chromaRowStride - w/2;
-
-                if (chromaRowPadding == 0){
-                    // When the row stride of the chroma channels equals their width, we can copy
-                    // the entire channels in one go
-                    u_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
-                    yuv_bytes_offset += w*h/4;
-                    v_plane.get(yuv_bytes, yuv_bytes_offset, w*h/4);
-                } else {
-                    // When not equal, we need to copy the channels row by row
-                    for (int i = 0; i < h/2; i++){
-                        u_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
-                        yuv_bytes_offset += w/2;
-                        if (i < h/2-1){
-                            u_plane.position(u_plane.position() + chromaRowPadding);
-                        }
-                    }
-                    for (int i = 0; i < h/2; i++){
-                        v_plane.get(yuv_bytes, yuv_bytes_offset, w/2);
-                        yuv_bytes_offset += w/2;
-                        if (i < h/2-1){
-                            v_plane.position(v_plane.position() + chromaRowPadding);
-                        }
-                    }
-                }
-
-                Mat yuv_mat = new Mat(h+h/2, w, CvType.CV_8UC1);
-                yuv_mat.put(0, 0, yuv_bytes);
-                Imgproc.cvtColor(yuv_mat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
+                Imgproc.cvtColor(mYuvMat, mRgba, Imgproc.COLOR_YUV2RGBA_I420, 4);
                 return mRgba;
             }
         }
 
+        /**
+         * Appends width x height bytes of a plane with the given row stride to dst.
+         * When the rows are not padded the whole plane is copied in one go, otherwise
+         * row by row. Both are buffer to buffer copies, so no Java array is involved.
+         * The position and limit of the plane are restored afterwards, so rgba() may be
+         * called more than once for the same image.
+         */
+        private void copyPlane(ByteBuffer plane, int rowStride, int width, int height, ByteBuffer dst) {
+            int position = plane.position();
+            int limit = plane.limit();
+            if (rowStride == width) {
+                plane.limit(position + width * height);
+                dst.put(plane);
+            } else {
+                for (int i = 0; i < height; i++) {
+                    int rowStart = position + i * rowStride;
+                    plane.limit(rowStart + width);
+                    plane.position(rowStart);
+                    dst.put(plane);
+                }
+            }
+            plane.limit(limit);
+            plane.position(position);
+        }
 
-        public JavaCamera2Frame(Image image) {
+        public JavaCamera2Frame() {
             super();
-            mImage = image;
             mRgba = new Mat();
-            mGray = new Mat();
+            mImageMats = new ImageMats();
+        }
+
+        public void setImage(Image image) {
+            mImage = image;
+        }
+
+        public void releaseImage() {
+            mImage = null;
         }
 
         public void release() {
             mRgba.release();
-            mGray.release();
+            mImageMats.release();
+            if (mYuvMat != null) {
+                mYuvMat.release();
+                mYuvMat = null;
+            }
+            mYuvBuffer = null;
         }
 
         private Image mImage;
         private Mat mRgba;
-        private Mat mGray;
+        private ImageMats mImageMats;
+        private ByteBuffer mYuvBuffer;
+        private Mat mYuvMat;
     };
 }
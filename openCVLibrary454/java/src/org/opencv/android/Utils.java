@@ -13,6 +13,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public class Utils {
 
@@ -108,21 +109,83 @@ public class Utils {
      * <p>
      * <br>This function converts an image in the OpenCV Mat representation to the Android Bitmap.
      * <br>The input Mat object has to be of the types 'CV_8UC1' (gray-scale), 'CV_8UC3' (RGB) or 'CV_8UC4' (RGBA).
-     * <br>The output Bitmap object has to be of the same size as the input Mat and of the types 'ARGB_8888' or 'RGB_565'.
+     * <br>The output Bitmap object has to be of the same size as the input Mat and of the types 'ARGB_8888' or 'RGB_565',
+     * or of the type 'ALPHA_8' for a 'CV_8UC1' Mat.
      * <br>This function throws an exception if the conversion fails.
+     * <p>
+     * Two cases skip the generic native conversion and are done with a single bulk copy through
+     * Bitmap.copyPixelsFromBuffer(): a 'CV_8UC1' Mat into an 'ALPHA_8' Bitmap, and a continuous
+     * 'CV_8UC4' Mat created over a direct buffer (see Mat.createDirect()) into an 'ARGB_8888'
+     * Bitmap without premultiplying, which copies straight from the Mat's memory.
      *
      * @param mat is a valid input Mat object of types 'CV_8UC1', 'CV_8UC3' or 'CV_8UC4'.
-     * @param bmp is a valid Bitmap object of the same size as the Mat and of type 'ARGB_8888' or 'RGB_565'.
-     * @param premultiplyAlpha is a flag, that determines, whether the Mat needs to be converted to alpha premultiplied format (like Android keeps 'ARGB_8888' bitmaps); the flag is ignored for 'RGB_565' bitmaps.
+     * @param bmp is a valid Bitmap object of the same size as the Mat and of type 'ARGB_8888', 'RGB_565' or 'ALPHA_8'.
+     * @param premultiplyAlpha is a flag, that determines, whether the Mat needs to be converted to alpha premultiplied format (like Android keeps 'ARGB_8888' bitmaps); the flag is ignored for 'RGB_565' and 'ALPHA_8' bitmaps.
      */
     public static void matToBitmap(Mat mat, Bitmap bmp, boolean premultiplyAlpha) {
         if (mat == null)
             throw new IllegalArgumentException("mat == null");
         if (bmp == null)
             throw new IllegalArgumentException("bmp == null");
+        if (bmp.getConfig() == Bitmap.Config.ALPHA_8) {
+            matToAlphaBitmap(mat, bmp);
+            return;
+        }
+        if (!premultiplyAlpha && mat.type() == CvType.CV_8UC4 && bmp.getConfig() == Bitmap.Config.ARGB_8888
+                && copyDirectPixels(mat, bmp, 4))
+            return;
         nMatToBitmap2(mat.nativeObj, bmp, premultiplyAlpha);
     }
 
+    // grows to the largest ALPHA_8 Bitmap converted on each thread
+    private static final ThreadLocal<ByteBuffer> sAlphaScratch = new ThreadLocal<ByteBuffer>();
+
+    /**
+     * Copies a 'CV_8UC1' Mat into an 'ALPHA_8' Bitmap, which the native conversion does not
+     * support. A Mat over a direct buffer is copied from directly. Any other Mat, including a
+     * submatrix, is first copied with one native copyTo() into a per-thread direct buffer laid
+     * out with the Bitmap's row stride, so that copyPixelsFromBuffer() can take it in one go.
+     */
+    private static void matToAlphaBitmap(Mat mat, Bitmap bmp) {
+        if (mat.type() != CvType.CV_8UC1)
+            throw new IllegalArgumentException("ALPHA_8 Bitmaps need a CV_8UC1 Mat, not " + CvType.typeToString(mat.type()));
+        if (mat.rows() != bmp.getHeight() || mat.cols() != bmp.getWidth())
+            throw new IllegalArgumentException("Mat is " + mat.cols() + "x" + mat.rows()
+                    + " but Bitmap is " + bmp.getWidth() + "x" + bmp.getHeight());
+        if (copyDirectPixels(mat, bmp, 1))
+            return;
+        int rowBytes = bmp.getRowBytes();
+        int byteCount = rowBytes * mat.rows();
+        ByteBuffer scratch = sAlphaScratch.get();
+        if (scratch == null || scratch.capacity() < byteCount) {
+            scratch = ByteBuffer.allocateDirect(byteCount);
+            sAlphaScratch.set(scratch);
+        }
+        scratch.clear();
+        Mat rows = new Mat(mat.rows(), mat.cols(), CvType.CV_8UC1, scratch, rowBytes);
+        try {
+            mat.copyTo(rows);
+        } finally {
+            rows.close();
+        }
+        scratch.limit(byteCount);
+        bmp.copyPixelsFromBuffer(scratch);
+    }
+
+    /**
+     * Copies the pixels of a Mat created over a direct buffer straight into a Bitmap with the
+     * same size and row stride. Returns false without copying if that is not possible.
+     */
+    private static boolean copyDirectPixels(Mat mat, Bitmap bmp, int bytesPerPixel) {
+        if (mat.rows() != bmp.getHeight() || mat.cols() != bmp.getWidth() || bmp.getRowBytes() != mat.cols() * bytesPerPixel)
+            return false;
+        ByteBuffer pixels = mat.directBuffer();
+        if (pixels == null)
+            return false;
+        bmp.copyPixelsFromBuffer(pixels);
+        return true;
+    }
+
     /**
      * Short form of the <b>matToBitmap(mat, bmp, premultiplyAlpha=false)</b>
      * @param mat is a valid input Mat object of the types 'CV_8UC1', 'CV_8UC3' or 'CV_8UC4'.
@@ -133,6 +196,48 @@ public class Utils {
     }
 
 
+    /**
+     * Converts OpenCV Mat to an ARGB_8888 Android Bitmap taken from a pool.
+     * <p>
+     * The Bitmap is acquired from the pool with the size of the Mat, so no new Bitmap is created
+     * when the pool holds a compatible one. The caller should release it back into the pool when
+     * done with it.
+     *
+     * @param mat is a valid input Mat object of the types 'CV_8UC1', 'CV_8UC3' or 'CV_8UC4'.
+     * @param pool is the pool to take the Bitmap from.
+     * @return the Bitmap holding the converted Mat.
+     */
+    public static Bitmap matToBitmap(Mat mat, BitmapPool pool) {
+        return matToBitmap(mat, pool, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Converts OpenCV Mat to an Android Bitmap of the given config taken from a pool.
+     * <p>
+     * Short form of acquiring a Bitmap of the size of the Mat from the pool and calling
+     * matToBitmap(mat, bmp, premultiplyAlpha=false). 'ALPHA_8' keeps a gray-scale Mat at one byte
+     * per pixel.
+     *
+     * @param mat is a valid input Mat object of the types 'CV_8UC1', 'CV_8UC3' or 'CV_8UC4'.
+     * @param pool is the pool to take the Bitmap from.
+     * @param config is 'ARGB_8888', 'RGB_565', or 'ALPHA_8' for a 'CV_8UC1' Mat.
+     * @return the Bitmap holding the converted Mat.
+     */
+    public static Bitmap matToBitmap(Mat mat, BitmapPool pool, Bitmap.Config config) {
+        if (mat == null)
+            throw new IllegalArgumentException("mat == null");
+        if (pool == null)
+            throw new IllegalArgumentException("pool == null");
+        Bitmap bmp = pool.acquire(mat.cols(), mat.rows(), config);
+        try {
+            matToBitmap(mat, bmp, false);
+        } catch (RuntimeException e) {
+            pool.release(bmp);
+            throw e;
+        }
+        return bmp;
+    }
+
     private static native void nBitmapToMat2(Bitmap b, long m_addr, boolean unPremultiplyAlpha);
 
     private static native void nMatToBitmap2(long m_addr, Bitmap b, boolean premultiplyAlpha);
@@ -1,17 +1,30 @@
 package org.opencv.core;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 // C++: class Mat
 //javadoc: Mat
-public class Mat {
+public class Mat implements AutoCloseable {
 
     public final long nativeObj;
 
+    // set by close() so that finalize() does not free the native object a second time
+    private volatile boolean mClosed = false;
+    // non-null when this Mat was created while MatTracker was enabled
+    private MatTracker.NativeRef mTrackerRef;
+
+    // the buffer a Mat created over a ByteBuffer uses, kept so that it is not collected while the
+    // Mat still points into it, and the data address it had then, see directBuffer()
+    private ByteBuffer mDataBuffer;
+    private long mDataBufferAddr;
+
     public Mat(long addr) {
         if (addr == 0)
             throw new UnsupportedOperationException("Native object address is NULL");
-        nativeObj = addr;
+        nativeObj = track(addr);
     }
 
     //
@@ -20,7 +33,7 @@ public class Mat {
 
     // javadoc: Mat::Mat()
     public Mat() {
-        nativeObj = n_Mat();
+        nativeObj = track(n_Mat());
     }
 
     //
@@ -29,7 +42,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(rows, cols, type)
     public Mat(int rows, int cols, int type) {
-        nativeObj = n_Mat(rows, cols, type);
+        nativeObj = track(n_Mat(rows, cols, type));
     }
 
     //
@@ -38,7 +51,9 @@ public class Mat {
 
     // javadoc: Mat::Mat(rows, cols, type, data)
     public Mat(int rows, int cols, int type, ByteBuffer data) {
-        nativeObj = n_Mat(rows, cols, type, data);
+        nativeObj = track(n_Mat(rows, cols, type, data));
+        mDataBuffer = data;
+        mDataBufferAddr = n_dataAddr(nativeObj);
     }
 
     //
@@ -47,7 +62,82 @@ public class Mat {
 
     // javadoc: Mat::Mat(rows, cols, type, data, step)
     public Mat(int rows, int cols, int type, ByteBuffer data, long step) {
-        nativeObj = n_Mat(rows, cols, type, data, step);
+        nativeObj = track(n_Mat(rows, cols, type, data, step));
+        mDataBuffer = data;
+        mDataBufferAddr = n_dataAddr(nativeObj);
+    }
+
+    /**
+     * Creates a Mat whose data lives in a newly allocated direct ByteBuffer, so that Java code
+     * can read and write its pixels through directBuffer() without copying.
+     */
+    public static Mat createDirect(int rows, int cols, int type) {
+        ByteBuffer data = ByteBuffer.allocateDirect(rows * cols * CvType.ELEM_SIZE(type));
+        return new Mat(rows, cols, type, data);
+    }
+
+    /**
+     * Returns a view of this Mat's data as a direct ByteBuffer in native byte order, with position
+     * 0 and limit at the end of the data. Writes through the view change the Mat.
+     * This is only possible for a continuous Mat created over a direct ByteBuffer (see
+     * createDirect()) that still uses that buffer; otherwise null is returned.
+     */
+    public ByteBuffer directBuffer() {
+        if (mDataBuffer == null || !mDataBuffer.isDirect() || dataAddr() != mDataBufferAddr || !isContinuous())
+            return null;
+        ByteBuffer view = mDataBuffer.duplicate();
+        view.clear();
+        view.limit((int) (total() * elemSize()));
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Copies the whole Mat into a direct ByteBuffer, starting at its position, with one native
+     * copy and no Java array in between. The rows are packed without padding even if this Mat is
+     * a submatrix. The position of the buffer is advanced past the copied bytes.
+     * @return the number of bytes copied
+     */
+    public int get(ByteBuffer data) {
+        int bytes = checkDirectTransfer(data);
+        if (bytes > data.remaining())
+            throw new BufferOverflowException();
+        if (bytes > 0) {
+            Mat target = new Mat(rows(), cols(), type(), data.slice());
+            copyTo(target);
+            target.close();
+            data.position(data.position() + bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Copies packed rows from a direct ByteBuffer, starting at its position, into the whole Mat
+     * with one native copy and no Java array in between. The Mat keeps its size and type, so
+     * this also writes through a submatrix into its parent. The position of the buffer is
+     * advanced past the copied bytes.
+     * @return the number of bytes copied
+     */
+    public int put(ByteBuffer data) {
+        int bytes = checkDirectTransfer(data);
+        if (bytes > data.remaining())
+            throw new BufferUnderflowException();
+        if (bytes > 0) {
+            Mat source = new Mat(rows(), cols(), type(), data.slice());
+            source.copyTo(this);
+            source.close();
+            data.position(data.position() + bytes);
+        }
+        return bytes;
+    }
+
+    private int checkDirectTransfer(ByteBuffer data) {
+        if (data == null)
+            throw new IllegalArgumentException("data == null");
+        if (!data.isDirect())
+            throw new UnsupportedOperationException("Only direct ByteBuffers are supported, use the array overloads instead");
+        if (dims() > 2)
+            throw new UnsupportedOperationException("Only 2D Mats are supported, dims = " + dims());
+        return (int) (total() * elemSize());
     }
 
     //
@@ -56,7 +146,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(size, type)
     public Mat(Size size, int type) {
-        nativeObj = n_Mat(size.width, size.height, type);
+        nativeObj = track(n_Mat(size.width, size.height, type));
     }
 
     //
@@ -65,7 +155,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(sizes, type)
     public Mat(int[] sizes, int type) {
-        nativeObj = n_Mat(sizes.length, sizes, type);
+        nativeObj = track(n_Mat(sizes.length, sizes, type));
     }
 
     //
@@ -74,7 +164,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(rows, cols, type, s)
     public Mat(int rows, int cols, int type, Scalar s) {
-        nativeObj = n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        nativeObj = track(n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]));
     }
 
     //
@@ -83,7 +173,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(size, type, s)
     public Mat(Size size, int type, Scalar s) {
-        nativeObj = n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        nativeObj = track(n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]));
     }
 
     //
@@ -92,7 +182,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(sizes, type, s)
     public Mat(int[] sizes, int type, Scalar s) {
-        nativeObj = n_Mat(sizes.length, sizes, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        nativeObj = track(n_Mat(sizes.length, sizes, type, s.val[0], s.val[1], s.val[2], s.val[3]));
     }
 
     //
@@ -101,12 +191,12 @@ public class Mat {
 
     // javadoc: Mat::Mat(m, rowRange, colRange)
     public Mat(Mat m, Range rowRange, Range colRange) {
-        nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end);
+        nativeObj = track(n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end));
     }
 
     // javadoc: Mat::Mat(m, rowRange)
     public Mat(Mat m, Range rowRange) {
-        nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end);
+        nativeObj = track(n_Mat(m.nativeObj, rowRange.start, rowRange.end));
     }
 
     //
@@ -115,7 +205,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(m, ranges)
     public Mat(Mat m, Range[] ranges) {
-        nativeObj = n_Mat(m.nativeObj, ranges);
+        nativeObj = track(n_Mat(m.nativeObj, ranges));
     }
 
     //
@@ -124,7 +214,7 @@ public class Mat {
 
     // javadoc: Mat::Mat(m, roi)
     public Mat(Mat m, Rect roi) {
-        nativeObj = n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width);
+        nativeObj = track(n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width));
     }
 
     //
@@ -751,12 +841,48 @@ public class Mat {
         return new Mat(n_zeros(sizes.length, sizes, type));
     }
 
+    /**
+     * Registers the native object with MatTracker if tracking is enabled. Called from every
+     * constructor with the address about to be stored in nativeObj.
+     */
+    private long track(long addr) {
+        if (MatTracker.isEnabled())
+            mTrackerRef = MatTracker.register(this, addr);
+        return addr;
+    }
+
+    /**
+     * Frees the native object now instead of waiting for the finalizer. The Mat must not be used
+     * afterwards; calling close() again does nothing.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (mClosed)
+                return;
+            mClosed = true;
+        }
+        if (mTrackerRef != null)
+            MatTracker.unregister(mTrackerRef);
+        n_delete(nativeObj);
+    }
+
     @Override
     protected void finalize() throws Throwable {
-        n_delete(nativeObj);
+        // a tracked Mat is freed by MatTracker.drain() once it has been collected
+        if (!mClosed && mTrackerRef == null)
+            n_delete(nativeObj);
         super.finalize();
     }
 
+    static void deleteNative(long addr) {
+        n_delete(addr);
+    }
+
+    static long nativeBytes(long addr) {
+        return n_total(addr) * n_elemSize(addr);
+    }
+
     // javadoc:Mat::toString()
     @Override
     public String toString() {
@@ -9,6 +9,7 @@ public class MatOfKeyPoint extends Mat {
     // 32FC7
     private static final int _depth = CvType.CV_32F;
     private static final int _channels = 7;
+    private float[] mBuffer; // scratch buffer for toArrays()
 
     public MatOfKeyPoint() {
         super();
@@ -74,6 +75,34 @@ public class MatOfKeyPoint extends Mat {
         return a;
     }
 
+    /**
+     * Copies the key points into caller supplied arrays without creating a KeyPoint for each of
+     * them. pt receives the coordinates packed as x, y per key point; size and response may be
+     * null if they are not needed. At most pt.length / 2 key points are copied; the total number
+     * is returned, so the caller can grow its arrays and call again if it was larger, or 0 if
+     * the key points could not all be read. The float buffer used for the transfer is kept and
+     * reused by later calls.
+     */
+    public int toArrays(float[] pt, float[] size, float[] response) {
+        int num = (int) total();
+        if(num == 0)
+            return 0;
+        if(mBuffer == null || mBuffer.length < num * _channels)
+            mBuffer = new float[num * _channels];
+        if(get(0, 0, mBuffer) < num * _channels * 4)
+            return 0;
+        int count = Math.min(num, pt.length / 2);
+        for(int i=0; i<count; i++) {
+            pt[2*i] = mBuffer[_channels*i+0];
+            pt[2*i+1] = mBuffer[_channels*i+1];
+            if(size != null)
+                size[i] = mBuffer[_channels*i+2];
+            if(response != null)
+                response[i] = mBuffer[_channels*i+4];
+        }
+        return num;
+    }
+
     public void fromList(List<KeyPoint> lkp) {
         KeyPoint akp[] = lkp.toArray(new KeyPoint[0]);
         fromArray(akp);
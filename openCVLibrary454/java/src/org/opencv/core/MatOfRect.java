@@ -8,6 +8,7 @@ public class MatOfRect extends Mat {
     // 32SC4
     private static final int _depth = CvType.CV_32S;
     private static final int _channels = 4;
+    private int[] mBuffer; // scratch buffer for toArrays()
 
     public MatOfRect() {
         super();
@@ -69,6 +70,54 @@ public class MatOfRect extends Mat {
             a[i] = new Rect(buff[i*_channels], buff[i*_channels+1], buff[i*_channels+2], buff[i*_channels+3]);
         return a;
     }
+
+    /**
+     * Copies the rectangles into caller supplied arrays without creating a Rect for each of
+     * them. At most x.length rectangles are copied; the total number is returned, so the
+     * caller can grow its arrays and call again if it was larger, or 0 if the rectangles could
+     * not all be read. The int buffer used for the transfer is kept and reused by later calls.
+     */
+    public int toArrays(int[] x, int[] y, int[] width, int[] height) {
+        int num = (int) total();
+        if(num == 0)
+            return 0;
+        if(mBuffer == null || mBuffer.length < num * _channels)
+            mBuffer = new int[num * _channels];
+        if(get(0, 0, mBuffer) < num * _channels * 4)
+            return 0;
+        int count = Math.min(num, x.length);
+        for(int i=0; i<count; i++) {
+            x[i] = mBuffer[_channels*i+0];
+            y[i] = mBuffer[_channels*i+1];
+            width[i] = mBuffer[_channels*i+2];
+            height[i] = mBuffer[_channels*i+3];
+        }
+        return num;
+    }
+
+    /**
+     * Copies the rectangles into a caller supplied array packed as x, y, width, height per
+     * rectangle. Returns the number of rectangles, -1 without copying anything if the array is
+     * too short to hold all of them, or 0 if they could not all be read. An array whose length
+     * is a multiple of four is filled straight from the native buffer; any other goes through
+     * the reused int buffer, since get() only accepts whole elements.
+     */
+    public int toPackedArray(int[] xywh) {
+        int num = (int) total();
+        if(num == 0)
+            return 0;
+        if(xywh.length < num * _channels)
+            return -1;
+        if(xywh.length % _channels == 0)
+            return get(0, 0, xywh) < num * _channels * 4 ? 0 : num;
+        if(mBuffer == null || mBuffer.length < num * _channels)
+            mBuffer = new int[num * _channels];
+        if(get(0, 0, mBuffer) < num * _channels * 4)
+            return 0;
+        System.arraycopy(mBuffer, 0, xywh, 0, num * _channels);
+        return num;
+    }
+
     public void fromList(List<Rect> lr) {
         Rect ap[] = lr.toArray(new Rect[0]);
         fromArray(ap);
@@ -0,0 +1,176 @@
+package org.opencv.core;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Opt-in tracker for the native objects behind Mat.
+ *
+ * By default a Mat frees its native object only in finalize(), so every temporary Mat waits on
+ * the finalizer thread. Mat.close() frees it immediately. When tracking is enabled, every Mat
+ * created afterwards is registered here with a PhantomReference instead: a tracked Mat that is
+ * closed is unregistered, and one that becomes unreachable without being closed is counted as
+ * leaked and its native object is freed by drain(), which runs on every registration and may
+ * also be called directly.
+ *
+ * In debug mode the allocation site of every tracked Mat is recorded, and getSummary() reports
+ * how many Mats leaked from each site. Recording a stack trace per Mat is expensive, so debug
+ * mode is meant for finding leaks, not for production.
+ */
+public final class MatTracker {
+
+    private static final int MAX_REPORTED_SITES = 5;
+
+    private static volatile boolean sEnabled = false;
+    private static volatile boolean sDebug = false;
+
+    private static final ReferenceQueue<Mat> sQueue = new ReferenceQueue<Mat>();
+    // holds the references strongly until their Mat is closed or collected
+    private static final Set<NativeRef> sLive = new HashSet<NativeRef>();
+    private static final Map<String, Integer> sLeakSites = new HashMap<String, Integer>();
+    private static long sClosedCount = 0;
+    private static long sLeakedCount = 0;
+
+    static final class NativeRef extends PhantomReference<Mat> {
+        final long addr;
+        final Throwable site;
+
+        NativeRef(Mat referent, long addr, Throwable site) {
+            super(referent, sQueue);
+            this.addr = addr;
+            this.site = site;
+        }
+    }
+
+    private MatTracker() {
+    }
+
+    /**
+     * Starts tracking every Mat created from now on.
+     * @param debug - whether to record the allocation site of every tracked Mat
+     */
+    public static void enable(boolean debug) {
+        sDebug = debug;
+        sEnabled = true;
+    }
+
+    /**
+     * Stops tracking new Mats. Mats that are already tracked are still freed by drain().
+     */
+    public static void disable() {
+        sEnabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    static NativeRef register(Mat mat, long addr) {
+        drain();
+        NativeRef ref = new NativeRef(mat, addr, sDebug ? new Throwable() : null);
+        synchronized (sLive) {
+            sLive.add(ref);
+        }
+        return ref;
+    }
+
+    /**
+     * Called by Mat.close() before it frees the native object itself.
+     */
+    static void unregister(NativeRef ref) {
+        synchronized (sLive) {
+            sLive.remove(ref);
+            sClosedCount++;
+        }
+        ref.clear();
+    }
+
+    /**
+     * Frees the native objects of tracked Mats that were collected without being closed.
+     * @return the number of native objects freed
+     */
+    public static int drain() {
+        int freed = 0;
+        NativeRef ref;
+        while ((ref = (NativeRef) sQueue.poll()) != null) {
+            synchronized (sLive) {
+                if (!sLive.remove(ref))
+                    continue;
+                sLeakedCount++;
+                if (ref.site != null) {
+                    String site = describeSite(ref.site);
+                    Integer count = sLeakSites.get(site);
+                    sLeakSites.put(site, count == null ? 1 : count + 1);
+                }
+            }
+            Mat.deleteNative(ref.addr);
+            freed++;
+        }
+        return freed;
+    }
+
+    /**
+     * Returns the first stack frame outside org.opencv.core, which is where the Mat was created.
+     */
+    private static String describeSite(Throwable site) {
+        for (StackTraceElement element : site.getStackTrace()) {
+            if (!element.getClassName().startsWith("org.opencv.core."))
+                return element.toString();
+        }
+        return "unknown";
+    }
+
+    public static int getLiveCount() {
+        synchronized (sLive) {
+            return sLive.size();
+        }
+    }
+
+    /**
+     * Returns the number of bytes addressed by the live tracked Mats. A submatrix or a Mat over
+     * an external buffer counts the region it addresses, so shared data may be counted twice.
+     */
+    public static long getLiveBytes() {
+        long bytes = 0;
+        synchronized (sLive) {
+            for (NativeRef ref : sLive)
+                bytes += Mat.nativeBytes(ref.addr);
+        }
+        return bytes;
+    }
+
+    public static long getClosedCount() {
+        synchronized (sLive) {
+            return sClosedCount;
+        }
+    }
+
+    public static long getLeakedCount() {
+        synchronized (sLive) {
+            return sLeakedCount;
+        }
+    }
+
+    public static String getSummary() {
+        drain();
+        StringBuilder summary = new StringBuilder();
+        summary.append(getLiveCount()).append(" live (").append(getLiveBytes()).append(" bytes), ")
+                .append(getClosedCount()).append(" closed, ").append(getLeakedCount()).append(" leaked");
+        synchronized (sLive) {
+            int reported = 0;
+            for (Map.Entry<String, Integer> site : sLeakSites.entrySet()) {
+                if (reported == MAX_REPORTED_SITES) {
+                    summary.append("; ...");
+                    break;
+                }
+                summary.append(reported == 0 ? "; leaked at " : ", ").append(site.getKey()).append(" x").append(site.getValue());
+                reported++;
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -22,6 +22,93 @@ import org.opencv.core.KeyPoint;
 
 public class Converters {
 
+    /**
+     * Per-thread scratch arrays for the overloads that convert a List into a caller provided
+     * Mat, so converting lists of similar sizes every frame allocates nothing. The arrays only
+     * grow, to a multiple of four so that their length stays a multiple of the channel count;
+     * Mat.put copies no more than the Mat holds, so a longer array than needed is fine.
+     */
+    private static class Scratch {
+        int[] ints = new int[0];
+        float[] floats = new float[0];
+        double[] doubles = new double[0];
+
+        private static int grow(int current, int length) {
+            return (Math.max(length, 2 * current) + 3) & ~3;
+        }
+
+        int[] ints(int length) {
+            if (ints.length < length)
+                ints = new int[grow(ints.length, length)];
+            return ints;
+        }
+
+        float[] floats(int length) {
+            if (floats.length < length)
+                floats = new float[grow(floats.length, length)];
+            return floats;
+        }
+
+        double[] doubles(int length) {
+            if (doubles.length < length)
+                doubles = new double[grow(doubles.length, length)];
+            return doubles;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Shapes res as a count x 1 Mat of the given type. Mat.create keeps the existing allocation
+     * when res already has that shape and type.
+     */
+    private static Mat createVectorMat(Mat res, int count, int type) {
+        if (res == null)
+            throw new IllegalArgumentException("Output Mat can't be null");
+        res.create(count, 1, type);
+        return res;
+    }
+
+    private static void checkPackedLength(int length, int count, int channels) {
+        if (count < 0 || length < count * channels)
+            throw new IllegalArgumentException(
+                    "Packed array of length " + length + " can't hold " + count + " elements of " + channels + " values");
+    }
+
+    /**
+     * Returns the packed values to hand to Mat.put for length values. Mat.put rejects an array
+     * whose length is not a multiple of the channel count, so a caller's array that is longer
+     * than needed is copied into the per-thread scratch array, whose length always is.
+     */
+    private static int[] packedValues(int[] values, int length) {
+        if (values.length == length)
+            return values;
+        int[] buff = scratch.get().ints(length);
+        System.arraycopy(values, 0, buff, 0, length);
+        return buff;
+    }
+
+    private static float[] packedValues(float[] values, int length) {
+        if (values.length == length)
+            return values;
+        float[] buff = scratch.get().floats(length);
+        System.arraycopy(values, 0, buff, 0, length);
+        return buff;
+    }
+
+    private static double[] packedValues(double[] values, int length) {
+        if (values.length == length)
+            return values;
+        double[] buff = scratch.get().doubles(length);
+        System.arraycopy(values, 0, buff, 0, length);
+        return buff;
+    }
+
     public static Mat vector_Point_to_Mat(List<Point> pts) {
         return vector_Point_to_Mat(pts, CvType.CV_32S);
     }
@@ -84,6 +171,97 @@ public class Converters {
         return res;
     }
 
+    /**
+     * Writes the first count points of a packed x, y array into res as a CV_32SC2 vector,
+     * reusing the allocation of res when it already has that shape. Returns res.
+     */
+    public static Mat vector_Point_to_Mat(int[] xy, int count, Mat res) {
+        checkPackedLength(xy.length, count, 2);
+        createVectorMat(res, count, CvType.CV_32SC2);
+        if (count > 0)
+            res.put(0, 0, packedValues(xy, 2 * count));
+        return res;
+    }
+
+    /**
+     * Like vector_Point_to_Mat(int[], int, Mat), for a CV_32FC2 vector.
+     */
+    public static Mat vector_Point2f_to_Mat(float[] xy, int count, Mat res) {
+        checkPackedLength(xy.length, count, 2);
+        createVectorMat(res, count, CvType.CV_32FC2);
+        if (count > 0)
+            res.put(0, 0, packedValues(xy, 2 * count));
+        return res;
+    }
+
+    /**
+     * Like vector_Point_to_Mat(int[], int, Mat), for a CV_64FC2 vector.
+     */
+    public static Mat vector_Point2d_to_Mat(double[] xy, int count, Mat res) {
+        checkPackedLength(xy.length, count, 2);
+        createVectorMat(res, count, CvType.CV_64FC2);
+        if (count > 0)
+            res.put(0, 0, packedValues(xy, 2 * count));
+        return res;
+    }
+
+    /**
+     * Like vector_Point_to_Mat(List, int), but writes into res, reusing its allocation when it
+     * already has the right shape, and packs the points through a per-thread scratch array.
+     * Returns res.
+     */
+    public static Mat vector_Point_to_Mat(List<Point> pts, int typeDepth, Mat res) {
+        int count = (pts != null) ? pts.size() : 0;
+        Scratch buffers = scratch.get();
+        switch (typeDepth) {
+        case CvType.CV_32S: {
+            createVectorMat(res, count, CvType.CV_32SC2);
+            if (count == 0)
+                break;
+            int[] buff = buffers.ints(count * 2);
+            for (int i = 0; i < count; i++) {
+                Point p = pts.get(i);
+                buff[i * 2] = (int) p.x;
+                buff[i * 2 + 1] = (int) p.y;
+            }
+            res.put(0, 0, buff);
+        }
+            break;
+
+        case CvType.CV_32F: {
+            createVectorMat(res, count, CvType.CV_32FC2);
+            if (count == 0)
+                break;
+            float[] buff = buffers.floats(count * 2);
+            for (int i = 0; i < count; i++) {
+                Point p = pts.get(i);
+                buff[i * 2] = (float) p.x;
+                buff[i * 2 + 1] = (float) p.y;
+            }
+            res.put(0, 0, buff);
+        }
+            break;
+
+        case CvType.CV_64F: {
+            createVectorMat(res, count, CvType.CV_64FC2);
+            if (count == 0)
+                break;
+            double[] buff = buffers.doubles(count * 2);
+            for (int i = 0; i < count; i++) {
+                Point p = pts.get(i);
+                buff[i * 2] = p.x;
+                buff[i * 2 + 1] = p.y;
+            }
+            res.put(0, 0, buff);
+        }
+            break;
+
+        default:
+            throw new IllegalArgumentException("'typeDepth' can be CV_32S, CV_32F or CV_64F");
+        }
+        return res;
+    }
+
     public static Mat vector_Point3i_to_Mat(List<Point3> pts) {
         return vector_Point3_to_Mat(pts, CvType.CV_32S);
     }
@@ -190,6 +368,53 @@ public class Converters {
         }
     }
 
+    /**
+     * Copies a CV_32SC2 vector into a packed x, y array without creating Point objects.
+     * Returns the number of points, or -1 without copying if the array is too short.
+     */
+    public static int Mat_to_vector_Point(Mat m, int[] xy) {
+        checkVectorMat(m, CvType.CV_32SC2);
+        int count = m.rows();
+        if (xy.length < 2 * count)
+            return -1;
+        if (count > 0)
+            m.get(0, 0, xy);
+        return count;
+    }
+
+    /**
+     * Like Mat_to_vector_Point(Mat, int[]), for a CV_32FC2 vector.
+     */
+    public static int Mat_to_vector_Point2f(Mat m, float[] xy) {
+        checkVectorMat(m, CvType.CV_32FC2);
+        int count = m.rows();
+        if (xy.length < 2 * count)
+            return -1;
+        if (count > 0)
+            m.get(0, 0, xy);
+        return count;
+    }
+
+    /**
+     * Like Mat_to_vector_Point(Mat, int[]), for a CV_64FC2 vector.
+     */
+    public static int Mat_to_vector_Point2d(Mat m, double[] xy) {
+        checkVectorMat(m, CvType.CV_64FC2);
+        int count = m.rows();
+        if (xy.length < 2 * count)
+            return -1;
+        if (count > 0)
+            m.get(0, 0, xy);
+        return count;
+    }
+
+    private static void checkVectorMat(Mat m, int type) {
+        if (m.cols() != 1 && !m.empty())
+            throw new IllegalArgumentException("Input Mat should have one column\n" + m);
+        if (m.type() != type && !m.empty())
+            throw new IllegalArgumentException("Input Mat should be of " + CvType.typeToString(type) + " type\n" + m);
+    }
+
     public static void Mat_to_vector_Point3i(Mat m, List<Point3> pts) {
         Mat_to_vector_Point3(m, pts);
     }
@@ -422,6 +647,54 @@ public class Converters {
         return res;
     }
 
+    /**
+     * Writes the first count rectangles of a packed x, y, width, height array into res as a
+     * CV_32SC4 vector, reusing the allocation of res when it already has that shape. Returns res.
+     */
+    public static Mat vector_Rect_to_Mat(int[] xywh, int count, Mat res) {
+        checkPackedLength(xywh.length, count, 4);
+        createVectorMat(res, count, CvType.CV_32SC4);
+        if (count > 0)
+            res.put(0, 0, packedValues(xywh, 4 * count));
+        return res;
+    }
+
+    /**
+     * Like vector_Rect_to_Mat(List), but writes into res, reusing its allocation when it already
+     * has the right shape, and packs the rectangles through a per-thread scratch array.
+     * Returns res.
+     */
+    public static Mat vector_Rect_to_Mat(List<Rect> rs, Mat res) {
+        int count = (rs != null) ? rs.size() : 0;
+        createVectorMat(res, count, CvType.CV_32SC4);
+        if (count > 0) {
+            int[] buff = scratch.get().ints(4 * count);
+            for (int i = 0; i < count; i++) {
+                Rect r = rs.get(i);
+                buff[4 * i] = r.x;
+                buff[4 * i + 1] = r.y;
+                buff[4 * i + 2] = r.width;
+                buff[4 * i + 3] = r.height;
+            }
+            res.put(0, 0, buff);
+        }
+        return res;
+    }
+
+    /**
+     * Copies a CV_32SC4 vector into a packed x, y, width, height array without creating Rect
+     * objects. Returns the number of rectangles, or -1 without copying if the array is too short.
+     */
+    public static int Mat_to_vector_Rect(Mat m, int[] xywh) {
+        checkVectorMat(m, CvType.CV_32SC4);
+        int count = m.rows();
+        if (xywh.length < 4 * count)
+            return -1;
+        if (count > 0)
+            m.get(0, 0, xywh);
+        return count;
+    }
+
     public static void Mat_to_vector_Rect(Mat m, List<Rect> rs) {
         if (rs == null)
             throw new IllegalArgumentException("rs == null");